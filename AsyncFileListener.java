@@ -0,0 +1,133 @@
+package beta;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A TextListener that writes to a file on its own thread, so the count never
+ * waits for the disk. Lines are queued and the writer thread takes them off the
+ * queue in batches. The queue holds at most QUEUE_CAPACITY lines; if the count
+ * gets that far ahead of the disk (logging every ballot of a big election, say)
+ * it waits for the writer, so the log can't fill up the heap. The file is
+ * complete once tabulationFinished (or close) has been called.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class AsyncFileListener extends TextListener
+{
+	final static int BATCH_SIZE = 4096;
+	final static int QUEUE_CAPACITY = 16 * BATCH_SIZE;
+	private final static Object END = new Object(); // queued after the last line
+
+	private LinkedBlockingQueue<Object> queue;
+	private BufferedWriter out;
+	private Thread writer;
+
+	/**
+	 * @param filename  the file to write
+	 * @param ballotDetail  true to write a line for every ballot moved
+	 * @throws IOException  if the file can't be opened
+	 */
+	public AsyncFileListener(String filename, boolean ballotDetail) throws IOException
+	{
+		super(ballotDetail);
+		queue = new LinkedBlockingQueue<Object>(QUEUE_CAPACITY);
+		out = new BufferedWriter(new FileWriter(filename), 1 << 16);
+		writer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				writeLines();
+			}
+		}, "voting log writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	protected void println(String line)
+	{
+		enqueue(line);
+	}
+
+	public void tabulationFinished()
+	{
+		close();
+	}
+
+	/**
+	 * Writes everything queued and closes the file
+	 */
+	public void close()
+	{
+		if (!writer.isAlive())
+			return;
+		enqueue(END);
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for room in the queue, unless the writer has stopped (if the file
+	 * couldn't be written), in which case the item is dropped
+	 */
+	private void enqueue(Object item)
+	{
+		try
+		{
+			while (!queue.offer(item, 100, TimeUnit.MILLISECONDS))
+			{
+				if (!writer.isAlive())
+					return;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeLines()
+	{
+		ArrayList<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+		try
+		{
+			boolean done = false;
+			while (!done)
+			{
+				batch.add(queue.take());
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				for (Object line : batch)
+				{
+					if (line == END)
+					{
+						done = true;
+						break;
+					}
+					out.write((String) line);
+					out.newLine();
+				}
+				batch.clear();
+			}
+			out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
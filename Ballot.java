@@ -1,6 +1,6 @@
 package beta;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A ballot contains a list of candidiates in the order of preference (highest
@@ -8,6 +8,12 @@ import java.util.ArrayList;
  * The constructor expects input to be a String in comma-separated format, that
  * may or may not have a header field at the beginning (like a timestamp), followed
  * by a list of names in order of preference
+ * The names are stored as candidate ids from a CandidateDictionary, packed into a
+ * short array
+ * A ballot can also stand for a group of identical ballots; its count is the number
+ * of voters who cast that ranking
+ * Ballots are never changed once made. The Tabulator follows each one with a
+ * BallotCursor that skips candidates who are no longer in the running.
  * 
  * @author dmcglathery
  *
@@ -17,88 +23,180 @@ public class Ballot
 	final static boolean HAS_HEADER_FIELD = true;
 
 	private String headerField;
-	private ArrayList<String> candidateNamesByRank;
+	private final short[] candidateIdsByRank;
+	private final int count; // number of identical ballots this one stands for
 
 	/**
 	 * 
 	 * @param lineFromFile
+	 * @param dictionary  the ids for the candidate names on the ballot
 	 */
-	public Ballot(String lineFromFile)
+	public Ballot(String lineFromFile, CandidateDictionary dictionary)
+	{
+		this(recordOf(lineFromFile), dictionary);
+	}
+
+	/**
+	 * Makes a ballot from the current record of a CsvCursor, looking the names up
+	 * straight from the cursor's buffer
+	 * @param record  cursor at the start of the record
+	 * @param dictionary  the ids for the candidate names on the ballot
+	 */
+	public Ballot(CsvCursor record, CandidateDictionary dictionary)
 	{
-		char delimiter = ',';
-		candidateNamesByRank = new ArrayList<String>();
-		ArrayList<String> tokenizedLine = VoteTools.tokenizeString(lineFromFile, delimiter);
-		int firstCandidateIndex = 0;
 		if (HAS_HEADER_FIELD)
 		{
-			headerField = tokenizedLine.get(0);
-			firstCandidateIndex = 1;
+			record.nextField();
+			headerField = record.fieldAsString();
 		}
 
-		for (int i = firstCandidateIndex; i < tokenizedLine.size(); i++)
+		short[] ids = new short[dictionary.size()];
+		int length = 0;
+		while (record.nextField())
 		{
-			if (tokenizedLine.get(i).length() != 0)
+			if (!record.fieldIsEmpty())
 			{
-				candidateNamesByRank.add(tokenizedLine.get(i));
+				int id = dictionary.idOf(record.getBuffer(), record.fieldStart(), record.fieldLength());
+				if (id == -1)
+				{
+					throw new IllegalArgumentException("Unknown candidate: " + record.fieldAsString());
+				}
+				if (length == ids.length)
+				{
+					throw new IllegalArgumentException("Invalid ballot");
+				}
+				ids[length++] = (short) id;
 			}
 		}
-		if (!isValidBallot())
+		candidateIdsByRank = Arrays.copyOf(ids, length);
+		count = 1;
+		if (!isValidBallot(dictionary.size()))
+		{
+			throw new IllegalArgumentException("Invalid ballot");
+		}
+	}
+
+	/**
+	 * Makes a ballot (or group of ballots) from a ranking that is already in ids
+	 * @param headerField  label for the ballot
+	 * @param ids  candidate ids in order of preference
+	 * @param count  the number of identical ballots
+	 * @param dictionary  the dictionary the ids come from
+	 */
+	public Ballot(String headerField, short[] ids, int count, CandidateDictionary dictionary)
+	{
+		if (count < 1)
+			throw new IllegalArgumentException("Invalid ballot count: " + count);
+		this.headerField = headerField;
+		this.candidateIdsByRank = ids.clone();
+		this.count = count;
+		for (short id : ids)
+		{
+			if (id < 0 || id >= dictionary.size())
+				throw new IllegalArgumentException("Unknown candidate id: " + id);
+		}
+		if (!isValidBallot(dictionary.size()))
 		{
 			throw new IllegalArgumentException("Invalid ballot");
 		}
 	}
 
+	private static CsvCursor recordOf(String line)
+	{
+		CsvCursor record = new CsvCursor(',');
+		record.reset(line);
+		return record;
+	}
+
 	/**
 	 * An invalid index is one with names listed more than once
+	 * @param candidateCount  the number of candidates in the dictionary
 	 * @return false if any name appears more than once, otherwise true
 	 */
-	private boolean isValidBallot()
+	private boolean isValidBallot(int candidateCount)
 	{
-		ArrayList<String> checker = new ArrayList<String>();
-		for (String s : candidateNamesByRank)
+		boolean[] checker = new boolean[candidateCount];
+		for (int i = 0; i < candidateIdsByRank.length; i++)
 		{
-			if (checker.contains(s))
+			if (checker[candidateIdsByRank[i]])
 				return false;
 			else 
-				checker.add(s);
+				checker[candidateIdsByRank[i]] = true;
 		}
 		return true;
 	}
 
-	public int rankingOf(String name)
+	public int rankingOf(int id)
 	{
-		return this.candidateNamesByRank.indexOf(name);
+		for (int i = 0; i < candidateIdsByRank.length; i++)
+		{
+			if (candidateIdsByRank[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+	public int getRank(int rank)
+	{
+		return candidateIdsByRank[rank];
 	}
 
-	public String getRank(int rank)
+	public String getHeaderField()
 	{
-		return this.candidateNamesByRank.get(rank);
+		return headerField;
 	}
 
 	public int getLength()
 	{
-		return this.candidateNamesByRank.size();
+		return candidateIdsByRank.length;
 	}
 
-	public void removeTop()
+	public boolean isEmpty()
 	{
-		this.candidateNamesByRank.remove(0);
+		return candidateIdsByRank.length == 0;
 	}
 
-	public void removeName(String name)
+	/**
+	 * @return  the number of identical ballots this ballot stands for
+	 */
+	public int getCount()
 	{
-		int i = this.candidateNamesByRank.indexOf(name);
-		if (i != -1)
-			this.candidateNamesByRank.remove(i);
+		return count;
 	}
 
-	public boolean isEmpty()
+	/**
+	 * @return  a copy of the candidate ids in order of preference
+	 */
+	public short[] getRanking()
 	{
-		return candidateNamesByRank.isEmpty();
+		return candidateIdsByRank.clone();
+	}
+
+	/**
+	 * Shows the ballot with candidate names looked up in the dictionary
+	 * @param dictionary  the dictionary the ballot was made with
+	 * @return  header and names in order of preference
+	 */
+	public String toString(CandidateDictionary dictionary)
+	{
+		StringBuilder result = new StringBuilder().append(headerField);
+		if (count > 1)
+			result.append(" x").append(count);
+		result.append(":[");
+		for (int i = 0; i < candidateIdsByRank.length; i++)
+		{
+			if (i > 0)
+				result.append(", ");
+			if (dictionary == null)
+				result.append(getRank(i));
+			else
+				result.append(dictionary.nameOf(getRank(i)));
+		}
+		return result.append(']').toString();
 	}
 
 	public String toString()
 	{
-		return headerField + ":" + candidateNamesByRank;
+		return toString(null);
 	}
 }
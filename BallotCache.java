@@ -0,0 +1,138 @@
+package beta;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A BallotCache reads each ballot file once, however many threads ask for it,
+ * and hands out the same read-only BallotStore every time after that. If a
+ * second thread asks for a file while it is being read, it waits for the first
+ * read instead of starting its own. A file whose length or modification time
+ * has changed since it was read is read again.
+ *
+ * The kind of file is told by its extension: .rcvb is a snapshot, .summary is a
+ * ballot summary, and anything else is read as a Google form csv file.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotCache
+{
+	private ConcurrentHashMap<String, Entry> stores; // by canonical path
+
+	/**
+	 * The reading of a file, and the length and modification time the file had
+	 * when it was started
+	 */
+	private static class Entry
+	{
+		final FutureTask<BallotStore> task;
+		final long length;
+		final long modified;
+
+		Entry(FutureTask<BallotStore> task, long length, long modified)
+		{
+			this.task = task;
+			this.length = length;
+			this.modified = modified;
+		}
+	}
+
+	public BallotCache()
+	{
+		stores = new ConcurrentHashMap<String, Entry>();
+	}
+
+	/**
+	 * Gets the ballots in a file, reading it if it hasn't been read yet or has
+	 * changed since
+	 * @param filename  the file
+	 * @return  the ballots
+	 * @throws IOException  if the file can't be read
+	 */
+	public BallotStore get(final String filename) throws IOException
+	{
+		File file = new File(filename);
+		String key = file.getCanonicalPath();
+		long length = file.length();
+		long modified = file.lastModified();
+		Entry entry = stores.get(key);
+		if (entry != null && (entry.length != length || entry.modified != modified))
+		{
+			stores.remove(key, entry); // the file has changed since it was read
+			entry = null;
+		}
+		if (entry == null)
+		{
+			Entry read = new Entry(new FutureTask<BallotStore>(new Callable<BallotStore>()
+			{
+				public BallotStore call() throws IOException
+				{
+					return read(filename);
+				}
+			}), length, modified);
+			entry = stores.putIfAbsent(key, read);
+			if (entry == null)
+			{
+				entry = read;
+				entry.task.run();
+			}
+		}
+		try
+		{
+			return entry.task.get();
+		}
+		catch (ExecutionException e)
+		{
+			stores.remove(key, entry); // so it can be tried again
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Could not read " + filename, e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading " + filename, e);
+		}
+	}
+
+	/**
+	 * Forgets a file, so it is read again the next time it is asked for
+	 * @param filename  the file
+	 * @throws IOException  if the file name can't be resolved
+	 */
+	public void remove(String filename) throws IOException
+	{
+		stores.remove(new File(filename).getCanonicalPath());
+	}
+
+	public int size()
+	{
+		return stores.size();
+	}
+
+	private static BallotStore read(String filename) throws IOException
+	{
+		if (!new File(filename).isFile())
+			throw new IOException("No such file: " + filename);
+		if (filename.endsWith(".rcvb"))
+			return BallotSnapshot.load(filename);
+		if (filename.endsWith(".summary"))
+		{
+			BallotSummary summary = BallotSummary.read(filename);
+			if (summary.getDictionary() == null)
+				throw new IOException("Not a ballot summary: " + filename);
+			return new BallotList(summary.getDictionary(), summary.getGroups());
+		}
+		ParallelFormReader reader = new ParallelFormReader(filename);
+		ArrayList<Ballot> groups = reader.readBallotGroups();
+		if (reader.getDictionary() == null)
+			throw new IOException("Not a Google form csv file: " + filename);
+		return new BallotList(reader.getDictionary(), groups);
+	}
+}
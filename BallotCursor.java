@@ -0,0 +1,187 @@
+package beta;
+
+import java.util.BitSet;
+
+/**
+ * A BallotCursor follows one ballot (or group of ballots) in a BallotStore
+ * through a count. The ballot itself is never changed; the cursor remembers which rank the
+ * ballot is currently counting for, and skips any candidate who is not in the
+ * set of continuing candidates when the ballot is moved.
+ * A cursor can stand for part of a ballot group, when a surplus transfer only
+ * moves some of the group's ballots.
+ * Each ballot the cursor stands for is worth value votes, in fixed point with
+ * ONE meaning a whole vote. Ballots start at ONE and only lose value when a
+ * fractional surplus transfer moves part of a ballot on.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotCursor
+{
+	final static int EXHAUSTED = -1;
+	final static long ONE = 100000; // a whole vote, so values keep five decimal places
+
+	private final BallotStore store;
+	private final int ballot;
+	private int position;
+	private int count;
+	private long value;
+
+	/**
+	 * A cursor at the first choice of a ballot, standing for all of its count
+	 * @param store  the store holding the ballot
+	 * @param ballot  number of the ballot in the store
+	 */
+	public BallotCursor(BallotStore store, int ballot)
+	{
+		this(store, ballot, 0, store.getCount(ballot), ONE);
+	}
+
+	private BallotCursor(BallotStore store, int ballot, int position, int count, long value)
+	{
+		this.store = store;
+		this.ballot = ballot;
+		this.position = position;
+		this.count = count;
+		this.value = value;
+	}
+
+	/**
+	 * Moves the cursor to the highest ranked continuing candidate, starting from
+	 * the candidate it is on now
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  the id the ballot now counts for, or EXHAUSTED if there is none
+	 */
+	public int skipTo(BitSet continuing)
+	{
+		int length = store.getLength(ballot);
+		while (position < length && !continuing.get(store.getRank(ballot, position)))
+			position++;
+		return current();
+	}
+
+	/**
+	 * @return  the id the ballot counts for, or EXHAUSTED if it has run out of names
+	 */
+	public int current()
+	{
+		return (position < store.getLength(ballot)) ? store.getRank(ballot, position) : EXHAUSTED;
+	}
+
+	/**
+	 * A ballot can be transferred if a continuing candidate is ranked below
+	 * the one it currently counts for
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  true if the ballot has a continuing candidate after its current one
+	 */
+	public boolean hasNextPreference(BitSet continuing)
+	{
+		int length = store.getLength(ballot);
+		for (int i = position + 1; i < length; i++)
+		{
+			if (continuing.get(store.getRank(ballot, i)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return  the number of ballots this cursor stands for
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return  the value of each ballot, in fixed point (ONE is a whole vote)
+	 */
+	public long getValue()
+	{
+		return value;
+	}
+
+	/**
+	 * @return  the votes this cursor adds to a stack: count times value
+	 */
+	public long getVotes()
+	{
+		return count * value;
+	}
+
+	/**
+	 * @return  the number of the ballot in its store
+	 */
+	public int getBallotNumber()
+	{
+		return ballot;
+	}
+
+	/**
+	 * Splits n ballots off this cursor. The new cursor is at the same rank
+	 * and this one keeps count - n ballots.
+	 * @param n  the number of ballots to split off (0 < n < count)
+	 * @return  a cursor for the n ballots split off
+	 */
+	public BallotCursor split(int n)
+	{
+		if (n <= 0 || n >= count)
+			throw new IllegalArgumentException("Cannot split " + n + " from a group of " + count);
+		count -= n;
+		return new BallotCursor(store, ballot, position, n, value);
+	}
+
+	/**
+	 * Splits part of the value of every ballot off this cursor. The new cursor
+	 * stands for the same ballots at the same rank, each worth transferValue,
+	 * and this one keeps what is left.
+	 * @param transferValue  the value to split off each ballot (0 < transferValue <= value)
+	 * @return  a cursor for the value split off
+	 */
+	public BallotCursor splitValue(long transferValue)
+	{
+		if (transferValue <= 0 || transferValue > value)
+			throw new IllegalArgumentException("Cannot split " + transferValue + " from a value of " + value);
+		value -= transferValue;
+		return new BallotCursor(store, ballot, position, count, transferValue);
+	}
+
+	/**
+	 * Shows the ballot as it now counts: the current candidate and the
+	 * continuing candidates ranked below
+	 * @param dictionary  the dictionary the ballot was made with
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  header and names in order of preference
+	 */
+	public String toString(CandidateDictionary dictionary, BitSet continuing)
+	{
+		return toString(store, ballot, position, count, value, dictionary, continuing);
+	}
+
+	/**
+	 * Shows a cursor kept somewhere else (see DirectBallotStacks) the same way
+	 * as toString
+	 */
+	static String toString(BallotStore store, int ballot, int position, int count, long value,
+			CandidateDictionary dictionary, BitSet continuing)
+	{
+		StringBuilder result = new StringBuilder().append(store.getLabel(ballot));
+		if (count > 1)
+			result.append(" x").append(count);
+		if (value != ONE)
+			result.append(" @").append(value / (double) ONE);
+		result.append(":[");
+		boolean first = true;
+		for (int i = position; i < store.getLength(ballot); i++)
+		{
+			if (continuing.get(store.getRank(ballot, i)))
+			{
+				if (!first)
+					result.append(", ");
+				result.append(dictionary.nameOf(store.getRank(ballot, i)));
+				first = false;
+			}
+		}
+		return result.append(']').toString();
+	}
+}
@@ -0,0 +1,137 @@
+package beta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * A BallotGrouper collapses identical rankings into weighted groups so the
+ * tabulator works with one Ballot per distinct ranking instead of one per voter.
+ * Groups are kept in the order their ranking was first seen, so the same input
+ * always makes the same list of groups.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotGrouper
+{
+	private CandidateDictionary dictionary;
+	private LinkedHashMap<Ranking, int[]> counts;
+	private int ballotCount;
+
+	public BallotGrouper(CandidateDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+		counts = new LinkedHashMap<Ranking, int[]>();
+	}
+
+	/**
+	 * Adds a ballot (or group of ballots) to the group with the same ranking
+	 * @param b  the ballot to add
+	 */
+	public void add(Ballot b)
+	{
+		add(b.getRanking(), b.getCount());
+	}
+
+	/**
+	 * Adds count ballots with the given ranking
+	 * @param ids  candidate ids in order of preference
+	 * @param count  the number of ballots with this ranking
+	 */
+	public void add(short[] ids, int count)
+	{
+		Ranking key = new Ranking(ids);
+		int[] total = counts.get(key);
+		if (total == null)
+		{
+			total = new int[1];
+			counts.put(key, total);
+		}
+		total[0] += count;
+		ballotCount += count;
+	}
+
+	/**
+	 * Adds all the groups of another grouper, in the order that grouper first saw them
+	 * @param other  a grouper for the same dictionary
+	 */
+	public void addAll(BallotGrouper other)
+	{
+		for (Ranking key : other.counts.keySet())
+		{
+			add(key.ids, other.counts.get(key)[0]);
+		}
+	}
+
+	/**
+	 * @return  the number of ballots added (not the number of groups)
+	 */
+	public int getBallotCount()
+	{
+		return ballotCount;
+	}
+
+	public int getGroupCount()
+	{
+		return counts.size();
+	}
+
+	/**
+	 * Makes one Ballot for each distinct ranking, with the count of voters
+	 * who cast it
+	 * @return  the list of ballot groups
+	 */
+	public ArrayList<Ballot> getGroups()
+	{
+		ArrayList<Ballot> groups = new ArrayList<Ballot>(counts.size());
+		int groupNumber = 1;
+		for (Ranking key : counts.keySet())
+		{
+			groups.add(new Ballot("Group " + groupNumber, key.ids, counts.get(key)[0], dictionary));
+			groupNumber++;
+		}
+		return groups;
+	}
+
+	/**
+	 * Groups a list of individual ballots
+	 * @param ballots  the ballots to group
+	 * @param dictionary  the dictionary the ballots were made with
+	 * @return  the list of ballot groups
+	 */
+	public static ArrayList<Ballot> group(ArrayList<Ballot> ballots, CandidateDictionary dictionary)
+	{
+		BallotGrouper grouper = new BallotGrouper(dictionary);
+		for (Ballot b : ballots)
+		{
+			grouper.add(b);
+		}
+		return grouper.getGroups();
+	}
+
+	/**
+	 * Hash key for a ranking of candidate ids
+	 */
+	private static class Ranking
+	{
+		private final short[] ids;
+		private final int hash;
+
+		Ranking(short[] ids)
+		{
+			this.ids = ids;
+			this.hash = Arrays.hashCode(ids);
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object other)
+		{
+			return other instanceof Ranking && Arrays.equals(ids, ((Ranking) other).ids);
+		}
+	}
+}
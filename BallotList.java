@@ -0,0 +1,65 @@
+package beta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A BallotStore holding Ballot objects in a list
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotList implements BallotStore
+{
+	private final CandidateDictionary dictionary;
+	private final List<Ballot> ballots;
+
+	/**
+	 * @param dictionary  the dictionary the ballots were made with
+	 * @param ballots  the ballots (copied, so later changes to the list are not seen)
+	 */
+	public BallotList(CandidateDictionary dictionary, ArrayList<Ballot> ballots)
+	{
+		this.dictionary = dictionary;
+		this.ballots = Collections.unmodifiableList(new ArrayList<Ballot>(ballots));
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public int size()
+	{
+		return ballots.size();
+	}
+
+	public int getCount(int ballot)
+	{
+		return ballots.get(ballot).getCount();
+	}
+
+	public int getLength(int ballot)
+	{
+		return ballots.get(ballot).getLength();
+	}
+
+	public int getRank(int ballot, int rank)
+	{
+		return ballots.get(ballot).getRank(rank);
+	}
+
+	public String getLabel(int ballot)
+	{
+		return ballots.get(ballot).getHeaderField();
+	}
+
+	/**
+	 * @return  the ballots, as a list that can't be changed
+	 */
+	public List<Ballot> getBallots()
+	{
+		return ballots;
+	}
+}
@@ -2,14 +2,15 @@ package beta;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Scanner;
 
 /**
  * This class reads a text file with the assumption that each line in the text
  * file represents a ballot with candidates listed in order of preference from
  * highest to lowest and hands off the creating of a ballot from the line of
  * text to the ballot constructor
+ * Ballots can be read one per line or collapsed into groups of identical rankings
  * 
  * @author doug
  *
@@ -19,13 +20,41 @@ public class BallotReader
 	final static boolean HAS_HEADER_RECORD = false;
 
 	private String filename;
+	private CandidateDictionary dictionary;
 
-	public BallotReader(String filename)
+	public BallotReader(String filename, CandidateDictionary dictionary)
 	{
 		this.filename = filename;
+		this.dictionary = dictionary;
 	}
 
 	public ArrayList<Ballot> makeBallotList()
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		ArrayList<Ballot> ballots = new ArrayList<Ballot>();
+		read(ballots, null);
+		Metrics.stop(sample);
+		return ballots;
+	}
+
+	/**
+	 * Reads the ballots and collapses identical rankings into groups as they
+	 * are read, so the individual rows are never kept
+	 * @return  the list of ballot groups
+	 */
+	public ArrayList<Ballot> makeBallotGroups()
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		BallotGrouper grouper = new BallotGrouper(dictionary);
+		read(null, grouper);
+		Metrics.stop(sample);
+		return grouper.getGroups();
+	}
+
+	/**
+	 * Reads the file with one CsvCursor, adding each ballot to the list or the grouper
+	 */
+	private void read(ArrayList<Ballot> ballots, BallotGrouper grouper)
 	{
 		FileReader file = null;
 		try
@@ -35,32 +64,38 @@ public class BallotReader
 		catch (FileNotFoundException e)
 		{
 			e.printStackTrace();
+			return;
 		}
-		Scanner fileScanner = new Scanner(file);
-		if (HAS_HEADER_RECORD)
-		{
-			fileScanner.nextLine(); // throw away header (first line)
-		}
-		String line;
-		ArrayList<Ballot> ballots = new ArrayList<Ballot>();
-
-		while (fileScanner.hasNextLine())
+		CsvCursor cursor = new CsvCursor(file);
+		try
 		{
-			line = fileScanner.nextLine();
-			try
+			if (HAS_HEADER_RECORD)
 			{
-				Ballot b = new Ballot(line);
-				ballots.add(b);
+				cursor.nextRecord(); // throw away header (first line)
 			}
-			catch (Exception e)
+			while (cursor.nextRecord())
 			{
-				System.out.println("This ballot is considered invalid: " + line);
+				if (cursor.isBlank())
+					continue; // not a ballot (see GoogleFormReader)
+				try
+				{
+					Ballot b = new Ballot(cursor, dictionary);
+					if (grouper != null)
+						grouper.add(b);
+					else
+						ballots.add(b);
+				}
+				catch (Exception e)
+				{
+					System.out.println("This ballot is considered invalid: " + cursor.recordAsString());
+				}
 			}
+			file.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
 		}
-
-		fileScanner.close();
-
-		return ballots;
 	}
 
 }
@@ -0,0 +1,236 @@
+package beta;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A ballot snapshot is a binary file holding an election that has already been
+ * read, so recounts, audits and what-ifs can skip parsing csv text.
+ *
+ * A snapshot is loaded by memory-mapping the file. The loaded snapshot is a
+ * BallotStore that reads rankings straight from the mapped bytes, so nothing is
+ * copied onto the heap except the candidate names.
+ *
+ * Layout (big-endian):
+ *   int     MAGIC ("RCVB")
+ *   short   VERSION
+ *   short   flags (GROUPED if the ballots are groups of identical ballots)
+ *   int     number of candidates, then for each: short length, UTF-8 name
+ *   int     number of ballots (or groups)
+ *   long    number of voters (sum of the counts)
+ *   int     length of the ballot data in bytes
+ *   ballot data, for each ballot: int count, short length, short ids[length]
+ *   int     offset of each ballot from the start of the ballot data
+ *   int     CRC-32 of everything before it
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotSnapshot implements BallotStore
+{
+	final static int MAGIC = 0x52435642; // "RCVB"
+	final static short VERSION = 1;
+	final static short GROUPED = 1;
+
+	private CandidateDictionary dictionary;
+	private ByteBuffer data; // the ballot data
+	private ByteBuffer offsets; // an int for each ballot
+	private int size;
+	private long voterCount;
+	private boolean grouped;
+
+	private BallotSnapshot()
+	{
+	}
+
+	/**
+	 * Writes ballots to a snapshot file
+	 * @param filename  the file to write
+	 * @param dictionary  the dictionary the ballots were made with
+	 * @param ballots  the ballots (or groups of ballots)
+	 * @param grouped  true if the ballots are groups of identical ballots
+	 * @throws IOException  if the file can't be written
+	 */
+	public static void write(String filename, CandidateDictionary dictionary, ArrayList<Ballot> ballots,
+			boolean grouped) throws IOException
+	{
+		CRC32 checksum = new CRC32();
+		DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(filename), 1 << 16), checksum));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeShort(grouped ? GROUPED : 0);
+		out.writeInt(dictionary.size());
+		for (String name : dictionary.getNames())
+		{
+			byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+			out.writeShort(utf8.length);
+			out.write(utf8);
+		}
+
+		long voterCount = 0;
+		long dataLength = 0;
+		int[] offsets = new int[ballots.size()];
+		for (int b = 0; b < ballots.size(); b++)
+		{
+			offsets[b] = (int) dataLength;
+			voterCount += ballots.get(b).getCount();
+			dataLength += 6 + 2 * ballots.get(b).getLength();
+			if (dataLength > Integer.MAX_VALUE)
+				throw new IOException("Too many ballots for one snapshot file");
+		}
+		out.writeInt(ballots.size());
+		out.writeLong(voterCount);
+		out.writeInt((int) dataLength);
+		for (Ballot b : ballots)
+		{
+			out.writeInt(b.getCount());
+			out.writeShort(b.getLength());
+			for (int rank = 0; rank < b.getLength(); rank++)
+				out.writeShort(b.getRank(rank));
+		}
+		for (int offset : offsets)
+			out.writeInt(offset);
+		out.flush();
+		out.writeInt((int) checksum.getValue());
+		out.close();
+	}
+
+	/**
+	 * Loads a snapshot file, checking its checksum
+	 * @param filename  the file to load
+	 * @return  the snapshot, ready to be counted
+	 * @throws IOException  if the file can't be read or is not a valid snapshot
+	 */
+	public static BallotSnapshot load(String filename) throws IOException
+	{
+		return load(filename, true);
+	}
+
+	/**
+	 * Loads a snapshot file
+	 * @param filename  the file to load
+	 * @param verify  false to skip reading the whole file for the checksum
+	 * @return  the snapshot, ready to be counted
+	 * @throws IOException  if the file can't be read or is not a valid snapshot
+	 */
+	public static BallotSnapshot load(String filename, boolean verify) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		FileChannel channel = file.getChannel();
+		if (channel.size() > Integer.MAX_VALUE)
+		{
+			file.close();
+			throw new IOException("Snapshot is too large to map: " + filename);
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		file.close(); // the mapping stays valid
+
+		if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a ballot snapshot: " + filename);
+		if (buffer.getShort(4) != VERSION)
+			throw new IOException("Unsupported snapshot version " + buffer.getShort(4) + ": " + filename);
+		if (verify)
+		{
+			CRC32 checksum = new CRC32();
+			ByteBuffer checked = buffer.duplicate();
+			checked.limit(buffer.limit() - 4);
+			checksum.update(checked);
+			if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4))
+				throw new IOException("Snapshot checksum does not match: " + filename);
+		}
+
+		BallotSnapshot snapshot = new BallotSnapshot();
+		snapshot.grouped = (buffer.getShort(6) & GROUPED) != 0;
+		int pos = 8;
+		int candidateCount = buffer.getInt(pos);
+		pos += 4;
+		ArrayList<String> names = new ArrayList<String>(candidateCount);
+		for (int i = 0; i < candidateCount; i++)
+		{
+			int length = buffer.getShort(pos) & 0xffff;
+			byte[] utf8 = new byte[length];
+			buffer.get(pos + 2, utf8);
+			names.add(new String(utf8, StandardCharsets.UTF_8));
+			pos += 2 + length;
+		}
+		snapshot.dictionary = new CandidateDictionary(names);
+		snapshot.size = buffer.getInt(pos);
+		snapshot.voterCount = buffer.getLong(pos + 4);
+		int dataLength = buffer.getInt(pos + 12);
+		pos += 16;
+		snapshot.data = buffer.slice(pos, dataLength);
+		snapshot.offsets = buffer.slice(pos + dataLength, 4 * snapshot.size);
+		return snapshot;
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return  the number of voters (the sum of the ballot counts)
+	 */
+	public long getVoterCount()
+	{
+		return voterCount;
+	}
+
+	public boolean isGrouped()
+	{
+		return grouped;
+	}
+
+	public int getCount(int ballot)
+	{
+		return data.getInt(offsets.getInt(4 * ballot));
+	}
+
+	public int getLength(int ballot)
+	{
+		return data.getShort(offsets.getInt(4 * ballot) + 4);
+	}
+
+	public int getRank(int ballot, int rank)
+	{
+		return data.getShort(offsets.getInt(4 * ballot) + 6 + 2 * rank);
+	}
+
+	public String getLabel(int ballot)
+	{
+		return (grouped ? "Group " : "Ballot ") + (ballot + 1);
+	}
+
+	/**
+	 * Copies the ballots onto the heap, for code that needs Ballot objects
+	 * @return  the list of ballots
+	 */
+	public ArrayList<Ballot> toBallotList()
+	{
+		ArrayList<Ballot> ballots = new ArrayList<Ballot>(size);
+		for (int b = 0; b < size; b++)
+		{
+			short[] ids = new short[getLength(b)];
+			for (int rank = 0; rank < ids.length; rank++)
+				ids[rank] = (short) getRank(b, rank);
+			ballots.add(new Ballot(getLabel(b), ids, getCount(b), dictionary));
+		}
+		return ballots;
+	}
+}
@@ -0,0 +1,114 @@
+package beta;
+
+import java.util.BitSet;
+
+/**
+ * BallotStacks hold the ballot cursors of a count (see BallotCursor) and the
+ * stack each one is in. A Tabulator decides which ballots move and where to;
+ * the stacks only keep them. HeapBallotStacks keeps BallotCursor objects in
+ * lists, and DirectBallotStacks keeps the same cursors outside the Java heap.
+ *
+ * The stacks are numbered by candidate id, and the exhausted ballots are in
+ * the stack after the last candidate (number dictionary.size()).
+ *
+ * Ballots are moved in batches. The take methods take ballots off a stack and
+ * put them in the batch, numbered from 0 in the order they were taken. Each
+ * cursor in the batch is then moved on with skipTo (different cursors can be
+ * moved on different threads at the same time), and placeBatch appends them,
+ * still in order, to the stacks of the candidates they now count for. A batch
+ * must be placed before more ballots are taken.
+ *
+ * The stacks keep no totals; the Tabulator adds up the counts and votes of the
+ * ballots it moves.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public interface BallotStacks
+{
+	/**
+	 * Puts a cursor for every ballot in the store in the batch, at its first
+	 * choice, in the order of the store
+	 */
+	void takeFirstCount();
+
+	/**
+	 * Puts all the ballots in a stack in the batch, leaving the stack empty
+	 * @param stack  the stack
+	 */
+	void takeAll(int stack);
+
+	/**
+	 * The number of ballots each cursor in a stack could move on, in the order
+	 * of the stack: its count if a continuing candidate is ranked below the one it
+	 * counts for now, otherwise 0
+	 * @param stack  the stack
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  a count for each cursor in the stack
+	 */
+	int[] movableCounts(int stack, BitSet continuing);
+
+	/**
+	 * Puts some of the ballots in a stack in the batch, splitting a cursor when
+	 * only some of its ballots are taken
+	 * @param stack  the stack
+	 * @param picked  how many ballots to take from each cursor, in the order of the stack
+	 */
+	void takeBallots(int stack, int[] picked);
+
+	/**
+	 * Puts part of the value of every ballot in a stack in the batch. Each
+	 * cursor's transfer value is Tabulator.transferValue of its value, and the
+	 * stack keeps the rest.
+	 * @param stack  the stack
+	 * @param surplus  the votes to transfer, in fixed point
+	 * @param total  the votes in the stack, in fixed point
+	 */
+	void takeFraction(int stack, long surplus, long total);
+
+	/**
+	 * @return  the number of cursors in the batch
+	 */
+	int batchSize();
+
+	/**
+	 * Moves a cursor in the batch to the highest ranked continuing candidate
+	 * (see BallotCursor.skipTo)
+	 * @param i  the cursor's number in the batch
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  the id the ballot now counts for, or BallotCursor.EXHAUSTED
+	 */
+	int skipTo(int i, BitSet continuing);
+
+	/**
+	 * @param i  a cursor's number in the batch
+	 * @return  the number of ballots the cursor stands for
+	 */
+	int getCount(int i);
+
+	/**
+	 * @param i  a cursor's number in the batch
+	 * @return  the votes of the cursor (count times value), in fixed point
+	 */
+	long getVotes(int i);
+
+	/**
+	 * @param i  a cursor's number in the batch
+	 * @param dictionary  the candidates
+	 * @param continuing  ids of the candidates still in the running
+	 * @return  the ballot as it now counts (see BallotCursor.toString)
+	 */
+	String toString(int i, CandidateDictionary dictionary, BitSet continuing);
+
+	/**
+	 * Appends every cursor in the batch, in order, to the stack of the candidate
+	 * it counts for (or the exhausted stack), and empties the batch
+	 */
+	void placeBatch();
+
+	/**
+	 * @param stack  the stack
+	 * @return  true if the stack has no ballots
+	 */
+	boolean isEmpty(int stack);
+}
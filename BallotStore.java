@@ -0,0 +1,48 @@
+package beta;
+
+/**
+ * A BallotStore is a read-only collection of ballots (or ballot groups) that a
+ * Tabulator can count. Ballots are numbered 0 to size() - 1 and their rankings
+ * are candidate ids from the store's CandidateDictionary.
+ *
+ * A store never changes once it is made, so any number of tabulations can read
+ * the same store. BallotList keeps Ballot objects on the heap; BallotSnapshot
+ * reads a memory-mapped binary file.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public interface BallotStore
+{
+	CandidateDictionary getDictionary();
+
+	/**
+	 * @return  the number of ballots (or groups) in the store
+	 */
+	int size();
+
+	/**
+	 * @param ballot  number of the ballot
+	 * @return  the number of identical ballots it stands for
+	 */
+	int getCount(int ballot);
+
+	/**
+	 * @param ballot  number of the ballot
+	 * @return  the number of candidates ranked on it
+	 */
+	int getLength(int ballot);
+
+	/**
+	 * @param ballot  number of the ballot
+	 * @param rank  0 for the first choice, 1 for the second, ...
+	 * @return  the id of the candidate at that rank
+	 */
+	int getRank(int ballot, int rank);
+
+	/**
+	 * @param ballot  number of the ballot
+	 * @return  a label for the ballot, like its timestamp, for messages
+	 */
+	String getLabel(int ballot);
+}
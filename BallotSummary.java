@@ -0,0 +1,136 @@
+package beta;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A ballot summary file holds an election already collapsed into ballot groups,
+ * so a recount can skip the raw response rows.
+ *
+ * The first record lists the candidates, the rest are one group each: the number
+ * of voters followed by the names in order of preference, for example
+ * Ballot summary,Fred,Wilma,Betty
+ * 12,Betty,Fred
+ * 3,Wilma
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BallotSummary
+{
+	final static String HEADER_LABEL = "Ballot summary";
+
+	private CandidateDictionary dictionary;
+	private ArrayList<Ballot> groups;
+
+	public BallotSummary(CandidateDictionary dictionary, ArrayList<Ballot> groups)
+	{
+		this.dictionary = dictionary;
+		this.groups = groups;
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public ArrayList<Ballot> getGroups()
+	{
+		return groups;
+	}
+
+	public void write(String filename)
+	{
+		PrintStream outputFile = null;
+		try
+		{
+			outputFile = new PrintStream(new File(filename));
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		outputFile.print(HEADER_LABEL);
+		for (String name : dictionary.getNames())
+		{
+			outputFile.print("," + CsvCursor.escape(name));
+		}
+		outputFile.println();
+		for (Ballot group : groups)
+		{
+			outputFile.print(group.getCount());
+			for (int rank = 0; rank < group.getLength(); rank++)
+			{
+				outputFile.print("," + CsvCursor.escape(dictionary.nameOf(group.getRank(rank))));
+			}
+			outputFile.println();
+		}
+		outputFile.close();
+	}
+
+	public static BallotSummary read(String filename)
+	{
+		FileReader file = null;
+		try
+		{
+			file = new FileReader(filename);
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+		}
+		CsvCursor cursor = new CsvCursor(file);
+		CandidateDictionary dictionary = null;
+		ArrayList<Ballot> groups = new ArrayList<Ballot>();
+		try
+		{
+			cursor.nextRecord();
+			ArrayList<String> names = new ArrayList<String>();
+			cursor.nextField(); // the header label
+			while (cursor.nextField())
+			{
+				names.add(cursor.fieldAsString());
+			}
+			dictionary = new CandidateDictionary(names);
+			short[] ids = new short[dictionary.size()];
+
+			while (cursor.nextRecord())
+			{
+				try
+				{
+					cursor.nextField();
+					int count = cursor.fieldAsInt();
+					int length = 0;
+					while (cursor.nextField())
+					{
+						if (!cursor.fieldIsEmpty())
+						{
+							int id = dictionary.idOf(cursor.getBuffer(), cursor.fieldStart(), cursor.fieldLength());
+							if (id == -1 || length == ids.length)
+								throw new IllegalArgumentException("Unknown candidate: " + cursor.fieldAsString());
+							ids[length++] = (short) id;
+						}
+					}
+					groups.add(new Ballot("Group " + (groups.size() + 1), Arrays.copyOf(ids, length), count, dictionary));
+				}
+				catch (Exception e)
+				{
+					System.out.println("This ballot group is considered invalid: " + cursor.recordAsString());
+				}
+			}
+			file.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+
+		return new BallotSummary(dictionary, groups);
+	}
+}
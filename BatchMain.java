@@ -0,0 +1,56 @@
+package beta;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This is the main class for counting a whole election day at once: every race
+ * listed in a manifest file is counted, several at a time, and the winners of
+ * all of them are printed together (see usage notes below).
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BatchMain
+{
+	/*
+	 * Usage notes:
+	 * 1. Download each race's Google form responses as a csv file (see VoteMain)
+	 *    and move them to this project's folder
+	 * 2. Make a manifest file listing the races, one per line (see Race for the
+	 *    format), for example:
+	 *      race,file,seats,transfer,seed
+	 *      Class president,president.csv,1,,
+	 *      Student council,council.csv,5,,
+	 * 3. Set manifest below to the name of the manifest file
+	 * 4. Run this file
+	 *    (each race's report is written to the reports folder, named after the
+	 *    race, and the winners of every race are written to summaryFilename)
+	 */
+	public static void main(String[] args)
+	{
+		String manifest = "races.csv";
+		String reportFolder = "reports";
+		String summaryFilename = "election day summary.txt";
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		ArrayList<Race> races;
+		try
+		{
+			races = Race.readManifest(manifest);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+
+		BatchRunner runner = new BatchRunner(new BallotCache(), threads);
+		runner.setReports(reportFolder, new TextReportRenderer());
+		long start = System.nanoTime();
+		ArrayList<RaceResult> results = runner.run(races);
+		System.out.println("\nCounted " + races.size() + " races in " + (System.nanoTime() - start) / 1000000 + " ms\n");
+		BatchRunner.printSummary(results, System.out);
+		BatchRunner.writeSummary(results, summaryFilename);
+	}
+}
@@ -0,0 +1,185 @@
+package beta;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A BatchRunner counts a list of races (see Race) at the same time, on a fixed
+ * number of threads. Ballot files are read through a BallotCache, so races that
+ * share a file (a recount with a different number of seats, say) read it once.
+ * Each race's report can be written to its own file, and the results of all the
+ * races are put together in one summary, in the order the races were listed.
+ *
+ * A race that can't be counted (a missing file, for example) doesn't stop the
+ * others; its error is shown in the summary.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class BatchRunner
+{
+	private BallotCache cache;
+	private int threads;
+	private String reportFolder; // null to write no report files
+	private ReportRenderer renderer;
+
+	/**
+	 * @param cache  where ballot files are read from
+	 * @param threads  the number of races counted at once
+	 */
+	public BatchRunner(BallotCache cache, int threads)
+	{
+		this.cache = cache;
+		this.threads = threads;
+		renderer = new TextReportRenderer();
+	}
+
+	/**
+	 * Has each race's report written to a file in a folder, named after the race
+	 * @param reportFolder  the folder (it is made if it doesn't exist), or null for no files
+	 * @param renderer  the format to write the reports in
+	 */
+	public void setReports(String reportFolder, ReportRenderer renderer)
+	{
+		this.reportFolder = reportFolder;
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Counts the races
+	 * @param races  the races to count
+	 * @return  the result of each race, in the same order
+	 */
+	public ArrayList<RaceResult> run(ArrayList<Race> races)
+	{
+		if (reportFolder != null)
+			new File(reportFolder).mkdirs();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<RaceResult>> futures = new ArrayList<Future<RaceResult>>();
+		for (final Race race : races)
+		{
+			futures.add(executor.submit(new Callable<RaceResult>()
+			{
+				public RaceResult call()
+				{
+					return count(race);
+				}
+			}));
+		}
+		ArrayList<RaceResult> results = new ArrayList<RaceResult>();
+		for (int i = 0; i < races.size(); i++)
+		{
+			try
+			{
+				results.add(futures.get(i).get());
+			}
+			catch (ExecutionException e)
+			{
+				results.add(new RaceResult(races.get(i), null, e.getCause().toString(), 0));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				results.add(new RaceResult(races.get(i), null, "interrupted", 0));
+			}
+		}
+		executor.shutdown();
+		return results;
+	}
+
+	private RaceResult count(Race race)
+	{
+		long start = System.nanoTime();
+		BallotStore ballots;
+		try
+		{
+			ballots = cache.get(race.getFilename());
+		}
+		catch (IOException e)
+		{
+			return new RaceResult(race, null, e.getMessage(), (System.nanoTime() - start) / 1000000);
+		}
+		long seed = race.getSeed();
+		if (seed == 0)
+			seed = new SplittableRandom().nextLong();
+		Tabulator tallier = new Tabulator(ballots, race.getSeats(), race.getTransferMode(), seed);
+		tallier.tabulate();
+		if (reportFolder != null)
+		{
+			String filename = race.getName().replaceAll("[\\\\/:*?\"<>|]", "_") + "." + renderer.getExtension();
+			tallier.writeReport(new File(reportFolder, filename).getPath(), renderer);
+		}
+		return new RaceResult(race, tallier.getReport(), null, (System.nanoTime() - start) / 1000000);
+	}
+
+	/**
+	 * Prints a line for each race with its winners
+	 * @param results  the results of a batch
+	 * @param out  where to print
+	 */
+	public static void printSummary(ArrayList<RaceResult> results, PrintStream out)
+	{
+		out.print(summary(results));
+	}
+
+	/**
+	 * Writes the summary to a file
+	 * @param results  the results of a batch
+	 * @param filename  the file to write
+	 */
+	public static void writeSummary(ArrayList<RaceResult> results, String filename)
+	{
+		try
+		{
+			Writer out = new BufferedWriter(new FileWriter(filename));
+			out.write(summary(results));
+			out.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private static String summary(ArrayList<RaceResult> results)
+	{
+		String newLine = System.lineSeparator();
+		StringBuilder summary = new StringBuilder();
+		int counted = 0;
+		for (RaceResult result : results)
+		{
+			Race race = result.getRace();
+			summary.append(race.getName()).append(" (").append(race.getSeats())
+					.append(race.getSeats() == 1 ? " seat" : " seats").append("): ");
+			ResultsReport report = result.getReport();
+			if (report == null)
+			{
+				summary.append("NOT COUNTED - ").append(result.getError()).append(newLine);
+				continue;
+			}
+			counted++;
+			String winners = TextReportRenderer.winnerList(report);
+			summary.append(winners.isEmpty() ? "no winners" : winners);
+			summary.append("  [threshold ").append(report.getThreshold());
+			summary.append(", ").append(report.getRoundCount()).append(" rounds");
+			if (report.getTransferMode() == Tabulator.TransferMode.WHOLE_BALLOTS)
+				summary.append(", seed ").append(report.getSeed());
+			if (!report.isComplete())
+				summary.append(", not all seats filled");
+			summary.append(", ").append(result.getMilliseconds()).append(" ms]").append(newLine);
+		}
+		summary.append(counted).append(" of ").append(results.size()).append(" races counted").append(newLine);
+		return summary.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package beta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A CandidateDictionary assigns each candidate name a small integer id
+ * (0, 1, 2, ...) in the order the names are given. Ballots and stacks work
+ * with these ids only; names are looked up again when the report is rendered.
+ * A name can also be looked up straight from a char buffer (see CsvCursor)
+ * without making a String of it.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class CandidateDictionary
+{
+	private ArrayList<String> names;
+	private HashMap<String, Integer> ids;
+	private int[] table; // open addressing on String.hashCode, holding id + 1 (0 is empty)
+
+	public CandidateDictionary(ArrayList<String> candList)
+	{
+		if (candList.size() > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Too many candidates: " + candList.size());
+		names = new ArrayList<String>(candList.size());
+		ids = new HashMap<String, Integer>();
+		for (String name : candList)
+		{
+			if (!ids.containsKey(name))
+			{
+				ids.put(name, names.size());
+				names.add(name);
+			}
+		}
+		table = new int[Integer.highestOneBit(Math.max(names.size(), 1) * 4)];
+		for (int id = 0; id < names.size(); id++)
+		{
+			int slot = names.get(id).hashCode() & (table.length - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+			table[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Returns the id of the named candidate
+	 * @param name  name of the candidate
+	 * @return  the candidate's id, or -1 if the name is not in the dictionary
+	 */
+	public int idOf(String name)
+	{
+		Integer id = ids.get(name);
+		return (id == null) ? -1 : id;
+	}
+
+	/**
+	 * Returns the id of the candidate whose name is in part of a char array
+	 * @param chars  the array holding the name
+	 * @param start  index of the first char of the name
+	 * @param length  the length of the name
+	 * @return  the candidate's id, or -1 if the name is not in the dictionary
+	 */
+	public int idOf(char[] chars, int start, int length)
+	{
+		int hash = 0;
+		for (int i = start; i < start + length; i++)
+			hash = 31 * hash + chars[i];
+		int slot = hash & (table.length - 1);
+		while (table[slot] != 0)
+		{
+			String name = names.get(table[slot] - 1);
+			if (name.length() == length)
+			{
+				int i = 0;
+				while (i < length && name.charAt(i) == chars[start + i])
+					i++;
+				if (i == length)
+					return table[slot] - 1;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		return -1;
+	}
+
+	public String nameOf(int id)
+	{
+		return names.get(id);
+	}
+
+	public int size()
+	{
+		return names.size();
+	}
+
+	/**
+	 * @return  a copy of the candidate names in id order
+	 */
+	public ArrayList<String> getNames()
+	{
+		return new ArrayList<String>(names);
+	}
+}
@@ -0,0 +1,213 @@
+package beta;
+
+import java.util.BitSet;
+
+/**
+ * A CandidateRegistry keeps everything a count needs to know about each
+ * candidate, in arrays indexed by candidate id: their state (continuing,
+ * elected or eliminated) and their votes. Every lookup is a single array
+ * access. The ballots themselves are kept in BallotStacks.
+ *
+ * The votes are changed with addVotes as ballots move. The continuing
+ * candidates are also kept in two TallyHeaps, so the candidates with the
+ * fewest and the most votes can be found quickly; call votesChanged when a
+ * candidate's votes change.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class CandidateRegistry
+{
+	private CandidateDictionary dictionary;
+	private CandidateState[] states;
+	private long[] votes;
+	private BitSet continuing; // ids of the continuing candidates
+	private int[] stateCounts; // number of candidates in each state
+	private TallyHeap fewest; // continuing candidates, fewest votes on top
+	private TallyHeap most; // continuing candidates, most votes on top
+
+	/**
+	 * A registry with every candidate continuing, each with no votes
+	 * @param dictionary  the candidates
+	 */
+	public CandidateRegistry(CandidateDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+		int size = dictionary.size();
+		states = new CandidateState[size];
+		votes = new long[size];
+		for (int id = 0; id < size; id++)
+			states[id] = CandidateState.CONTINUING;
+		continuing = new BitSet(size);
+		continuing.set(0, size);
+		stateCounts = new int[CandidateState.values().length];
+		stateCounts[CandidateState.CONTINUING.ordinal()] = size;
+		fewest = new TallyHeap(votes, false);
+		most = new TallyHeap(votes, true);
+		for (int id = 0; id < size; id++)
+		{
+			fewest.add(id);
+			most.add(id);
+		}
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public int size()
+	{
+		return states.length;
+	}
+
+	/**
+	 * @param name  the name of a candidate
+	 * @return  the candidate's id, or -1 if there is no such candidate
+	 */
+	public int idOf(String name)
+	{
+		return dictionary.idOf(name);
+	}
+
+	public String nameOf(int id)
+	{
+		return dictionary.nameOf(id);
+	}
+
+	public CandidateState getState(int id)
+	{
+		return states[id];
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @return  the votes of the candidate's ballots, in fixed point
+	 */
+	public long getVotes(int id)
+	{
+		return votes[id];
+	}
+
+	/**
+	 * @param state  a state
+	 * @return  the number of candidates in that state
+	 */
+	public int count(CandidateState state)
+	{
+		return stateCounts[state.ordinal()];
+	}
+
+	public boolean isContinuing(int id)
+	{
+		return states[id] == CandidateState.CONTINUING;
+	}
+
+	/**
+	 * The ids of the continuing candidates. The set is the registry's own (ballot
+	 * cursors read it to skip candidates) and must not be changed except
+	 * through setState.
+	 * @return  the set of continuing ids
+	 */
+	public BitSet getContinuing()
+	{
+		return continuing;
+	}
+
+	/**
+	 * Changes a candidate's state
+	 * @param id  the candidate
+	 * @param state  the new state
+	 */
+	public void setState(int id, CandidateState state)
+	{
+		stateCounts[states[id].ordinal()]--;
+		stateCounts[state.ordinal()]++;
+		states[id] = state;
+		continuing.set(id, state == CandidateState.CONTINUING);
+		if (state == CandidateState.CONTINUING)
+		{
+			if (!fewest.contains(id))
+			{
+				fewest.add(id);
+				most.add(id);
+			}
+		}
+		else
+		{
+			fewest.remove(id);
+			most.remove(id);
+		}
+	}
+
+	/**
+	 * Adds votes to a candidate's total. The heaps are not updated until
+	 * votesChanged is called.
+	 * @param id  the candidate
+	 * @param added  the votes added (or taken away, if negative), in fixed point
+	 */
+	void addVotes(int id, long added)
+	{
+		votes[id] += added;
+	}
+
+	/**
+	 * Must be called after a candidate's votes change, and before any other
+	 * candidate's votes change, to keep the heaps in order
+	 * @param id  the candidate
+	 */
+	public void votesChanged(int id)
+	{
+		fewest.update(id);
+		most.update(id);
+	}
+
+	/**
+	 * @return  the continuing candidate with the fewest votes (the lowest id if
+	 *          there is a tie), or -1 if none are continuing
+	 */
+	public int fewestVotes()
+	{
+		return fewest.peek();
+	}
+
+	/**
+	 * @return  the continuing candidate with the most votes (the lowest id if
+	 *          there is a tie), or -1 if none are continuing
+	 */
+	public int mostVotes()
+	{
+		return most.peek();
+	}
+
+	/**
+	 * The continuing candidates, ordered from the fewest votes. Candidates taken
+	 * off the heap (to look below the top) must be added back or have their
+	 * state changed.
+	 * @return  the heap
+	 */
+	TallyHeap fewestHeap()
+	{
+		return fewest;
+	}
+
+	/**
+	 * The votes of every candidate, by id. This is the registry's own array, not
+	 * a copy, so it must not be changed.
+	 * @return  the votes array
+	 */
+	long[] votesById()
+	{
+		return votes;
+	}
+
+	/**
+	 * The state of every candidate, by id. This is the registry's own array, not
+	 * a copy, so it must not be changed.
+	 * @return  the states array
+	 */
+	CandidateState[] statesById()
+	{
+		return states;
+	}
+}
@@ -0,0 +1,12 @@
+package beta;
+
+/**
+ * Where a candidate stands in a count
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public enum CandidateState
+{
+	CONTINUING, ELECTED, ELIMINATED
+}
@@ -0,0 +1,296 @@
+package beta;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A CsvCursor steps through the records and fields of comma-separated text
+ * (RFC 4180): fields may be quoted, a quoted field may hold the delimiter or a
+ * line break, and a quote inside a quoted field is written twice ("").
+ *
+ * One cursor is reused for every record. The current record is kept in a char
+ * buffer that only grows, and a field is just a start and length in that buffer
+ * (quoted fields are unescaped in place), so reading a file makes no Strings
+ * unless a field is asked for as one with fieldAsString.
+ *
+ * Usage:
+ *   CsvCursor cursor = new CsvCursor(reader);
+ *   while (cursor.nextRecord())
+ *     while (cursor.nextField())
+ *       ... cursor.fieldAsInt(), cursor.getBuffer() / fieldStart() / fieldLength() ...
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class CsvCursor
+{
+	final static char QUOTE = '"';
+
+	private Reader in;
+	private char[] input;
+	private int inputPos;
+	private int inputLimit;
+
+	private char delimiter;
+	private char[] record = new char[256];
+	private int recordLength;
+	private int pos; // where the next field starts, or past recordLength when there are no more
+	private int fieldStart;
+	private int fieldEnd;
+
+	/**
+	 * A cursor over the comma-separated records read from in
+	 * @param in  the text to read (it does not need to be buffered)
+	 */
+	public CsvCursor(Reader in)
+	{
+		this(',');
+		this.in = in;
+		input = new char[8192];
+	}
+
+	/**
+	 * A cursor for records given one at a time with reset
+	 * @param delimiter  the character between fields
+	 */
+	public CsvCursor(char delimiter)
+	{
+		this.delimiter = delimiter;
+		pos = 1; // no record yet
+	}
+
+	/**
+	 * Makes the given line the current record
+	 * @param line  one record
+	 */
+	public void reset(String line)
+	{
+		recordLength = 0;
+		ensureCapacity(line.length());
+		line.getChars(0, line.length(), record, 0);
+		recordLength = line.length();
+		pos = 0;
+	}
+
+	/**
+	 * Reads the next record from the input. A line break inside quotes is part
+	 * of the record; "\r\n" and "\n" both end a record.
+	 * @return  false at the end of the input
+	 * @throws IOException  if the input can't be read
+	 */
+	public boolean nextRecord() throws IOException
+	{
+		recordLength = 0;
+		pos = 0;
+		boolean quoted = false;
+		boolean readAny = false;
+		while (true)
+		{
+			if (inputPos == inputLimit)
+			{
+				inputLimit = in.read(input, 0, input.length);
+				inputPos = 0;
+				if (inputLimit <= 0)
+				{
+					inputLimit = 0;
+					break;
+				}
+			}
+			char c = input[inputPos++];
+			readAny = true;
+			if (c == '\n' && !quoted)
+				break;
+			if (c == QUOTE)
+				quoted = !quoted;
+			if (recordLength == record.length)
+				ensureCapacity(recordLength + 1);
+			record[recordLength++] = c;
+		}
+		if (recordLength > 0 && record[recordLength - 1] == '\r')
+			recordLength--;
+		if (!readAny)
+			pos = 1;
+		return readAny;
+	}
+
+	/**
+	 * Moves to the next field of the current record. A record always has at
+	 * least one field, even if it is empty.
+	 * @return  false if there are no more fields
+	 */
+	public boolean nextField()
+	{
+		if (pos > recordLength)
+			return false;
+		if (pos < recordLength && record[pos] == QUOTE)
+		{
+			// copy the quoted text back over itself without the quotes
+			int read = pos + 1;
+			int write = pos;
+			fieldStart = pos;
+			while (read < recordLength)
+			{
+				char c = record[read++];
+				if (c == QUOTE)
+				{
+					if (read < recordLength && record[read] == QUOTE)
+						read++;
+					else
+						break;
+				}
+				record[write++] = c;
+			}
+			// anything between the closing quote and the delimiter is kept as is
+			while (read < recordLength && record[read] != delimiter)
+				record[write++] = record[read++];
+			fieldEnd = write;
+			pos = read + 1;
+		}
+		else
+		{
+			fieldStart = pos;
+			int end = pos;
+			while (end < recordLength && record[end] != delimiter)
+				end++;
+			fieldEnd = end;
+			pos = end + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves past n fields
+	 * @param n  the number of fields to skip
+	 * @return  false if the record ran out of fields
+	 */
+	public boolean skipFields(int n)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			if (!nextField())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return  the buffer holding the current field (only valid until the next record)
+	 */
+	public char[] getBuffer()
+	{
+		return record;
+	}
+
+	public int fieldStart()
+	{
+		return fieldStart;
+	}
+
+	public int fieldLength()
+	{
+		return fieldEnd - fieldStart;
+	}
+
+	public boolean fieldIsEmpty()
+	{
+		return fieldEnd == fieldStart;
+	}
+
+	/**
+	 * @return  a new String with the text of the current field
+	 */
+	public String fieldAsString()
+	{
+		return new String(record, fieldStart, fieldEnd - fieldStart);
+	}
+
+	/**
+	 * Compares the current field to a String without making a String of the field
+	 * @param text  the text to compare to
+	 * @return  true if they are the same
+	 */
+	public boolean fieldEquals(String text)
+	{
+		if (text.length() != fieldEnd - fieldStart)
+			return false;
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (record[fieldStart + i] != text.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the current field as a whole number, ignoring spaces around it
+	 * @return  the number
+	 * @throws NumberFormatException  if the field is not a whole number
+	 */
+	public int fieldAsInt()
+	{
+		int start = fieldStart;
+		int end = fieldEnd;
+		while (start < end && record[start] == ' ')
+			start++;
+		while (end > start && record[end - 1] == ' ')
+			end--;
+		boolean negative = start < end && record[start] == '-';
+		if (negative)
+			start++;
+		if (start == end || end - start > 9)
+			throw new NumberFormatException("Not a number: " + fieldAsString());
+		int value = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = record[i];
+			if (c < '0' || c > '9')
+				throw new NumberFormatException("Not a number: " + fieldAsString());
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return  true if the current record is an empty line (not even one
+	 *          delimiter), which the ballot readers skip rather than count
+	 */
+	public boolean isBlank()
+	{
+		return recordLength == 0;
+	}
+
+	/**
+	 * @return  the current record as text, for messages (quoted fields already
+	 *          stepped through have had their quotes taken out)
+	 */
+	public String recordAsString()
+	{
+		return new String(record, 0, recordLength);
+	}
+
+	/**
+	 * Quotes a field for writing if it holds a delimiter, quote or line break
+	 * @param field  the text of the field
+	 * @return  the field as it should be written
+	 */
+	public static String escape(String field)
+	{
+		for (int i = 0; i < field.length(); i++)
+		{
+			char c = field.charAt(i);
+			if (c == ',' || c == QUOTE || c == '\n' || c == '\r')
+				return QUOTE + field.replace("\"", "\"\"") + QUOTE;
+		}
+		return field;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > record.length)
+		{
+			char[] bigger = new char[Math.max(capacity, record.length * 2)];
+			System.arraycopy(record, 0, bigger, 0, recordLength);
+			record = bigger;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package beta;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a ResultsReport as csv for spreadsheets: a row for each candidate
+ * (and one for exhausted votes) with their votes after each round and their
+ * final state. An eliminated candidate's cells are left empty.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class CsvReportRenderer implements ReportRenderer
+{
+	public String getExtension()
+	{
+		return "csv";
+	}
+
+	public void render(ResultsReport report, Writer out) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		line.append("Candidate");
+		for (int round = 1; round <= report.getRoundCount(); round++)
+			line.append(",Round ").append(round);
+		line.append(",Result\r\n");
+		out.append(line);
+
+		for (int id = 0; id < report.getCandidateCount(); id++)
+		{
+			line.setLength(0);
+			line.append(CsvCursor.escape(report.getName(id)));
+			for (int round = 1; round <= report.getRoundCount(); round++)
+			{
+				line.append(',');
+				if (report.getState(id, round) != CandidateState.ELIMINATED)
+					line.append(Tabulator.formatVotes(report.getVotes(id, round)));
+			}
+			line.append(',').append(report.getFinalState(id)).append("\r\n");
+			out.append(line);
+		}
+
+		line.setLength(0);
+		line.append("Exhausted");
+		for (int round = 1; round <= report.getRoundCount(); round++)
+			line.append(',').append(Tabulator.formatVotes(report.getExhausted(round)));
+		line.append(",\r\n");
+		out.append(line);
+	}
+}
@@ -0,0 +1,310 @@
+package beta;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * DirectBallotStacks keep the cursors of a count outside the Java heap (see
+ * BallotStacks). Use them with a DirectBallotStore for elections too big to
+ * count comfortably on the heap: the heap a count needs then depends on the
+ * number of candidates, not the number of ballots.
+ *
+ * HeapBallotStacks have a BallotCursor object for each ballot and an ArrayList
+ * of them for each stack. Here each cursor is 24 bytes in a direct ByteBuffer:
+ *   int   the ballot's number in the store
+ *   int   the rank it is counting for
+ *   int   the number of ballots it stands for
+ *   int   the next cursor in the same stack, or NONE
+ *   long  the value of each ballot (BallotCursor.ONE is a whole vote)
+ * and each stack is a linked list of cursors, with only its first and last
+ * cursor kept on the heap. Surplus transfers that split a ballot add cursors
+ * at the end of the buffer. The batch is a direct buffer of cursor numbers.
+ *
+ * The Tabulator calls skipTo for different parts of the batch on different
+ * threads, all using the one cursors buffer. This is safe because skipTo only
+ * uses absolute gets and puts, which never touch the buffer's position, and
+ * only writes the POSITION of the batch entry's own cursor. No cursor is in
+ * the batch twice (each take method puts a cursor in at most once, which is
+ * checked when assertions are on with -ea), so no two threads ever write the
+ * same bytes, and no cursor is added (which could replace the buffer) until
+ * the batch is placed.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class DirectBallotStacks implements BallotStacks
+{
+	final static int CURSOR_BYTES = 24;
+	final static int BALLOT = 0;
+	final static int POSITION = 4;
+	final static int COUNT = 8;
+	final static int NEXT = 12;
+	final static int VALUE = 16;
+	final static int NONE = -1;
+
+	private BallotStore ballots;
+	private ByteBuffer cursors;
+	private int cursorCount;
+	private int[] first; // the first cursor in each stack, and in the exhausted stack (the last one)
+	private int[] last;
+	private int[] groups; // the number of cursors in each stack
+	private ByteBuffer batch; // an int for each cursor in the batch
+	private int batchSize;
+
+	/**
+	 * Empty stacks for counting a store
+	 * @param ballots  the ballots to count (usually a DirectBallotStore)
+	 */
+	public DirectBallotStacks(BallotStore ballots)
+	{
+		this.ballots = ballots;
+		int size = ballots.getDictionary().size() + 1;
+		first = new int[size];
+		last = new int[size];
+		groups = new int[size];
+		Arrays.fill(first, NONE);
+		Arrays.fill(last, NONE);
+		cursors = ByteBuffer.allocateDirect(CURSOR_BYTES);
+		batch = ByteBuffer.allocateDirect(4);
+	}
+
+	/**
+	 * @return  the number of bytes of cursors and batch held outside the heap
+	 */
+	public long getDirectBytes()
+	{
+		return cursors.capacity() + batch.capacity();
+	}
+
+	public void takeFirstCount()
+	{
+		int size = ballots.size();
+		if ((long) size * CURSOR_BYTES > Integer.MAX_VALUE / 2)
+			throw new IllegalStateException("Too many ballots to count off the heap: " + size);
+		cursors = ByteBuffer.allocateDirect(Math.max(CURSOR_BYTES, size * CURSOR_BYTES));
+		batch = ByteBuffer.allocateDirect(Math.max(4, size * 4));
+		batchSize = 0;
+		for (int b = 0; b < size; b++)
+			addToBatch(newCursor(b, 0, ballots.getCount(b), BallotCursor.ONE));
+		assert batchIsDistinct();
+	}
+
+	public void takeAll(int stack)
+	{
+		batchSize = 0;
+		for (int cursor = first[stack]; cursor != NONE; cursor = cursors.getInt(cursor * CURSOR_BYTES + NEXT))
+			addToBatch(cursor);
+		first[stack] = NONE;
+		last[stack] = NONE;
+		groups[stack] = 0;
+		assert batchIsDistinct();
+	}
+
+	public int[] movableCounts(int stack, BitSet continuing)
+	{
+		int[] counts = new int[groups[stack]];
+		int g = 0;
+		for (int cursor = first[stack]; cursor != NONE; cursor = cursors.getInt(cursor * CURSOR_BYTES + NEXT))
+		{
+			if (hasNextPreference(cursor, continuing))
+				counts[g] = cursors.getInt(cursor * CURSOR_BYTES + COUNT);
+			g++;
+		}
+		return counts;
+	}
+
+	public void takeBallots(int stack, int[] picked)
+	{
+		batchSize = 0;
+		int cursor = first[stack];
+		first[stack] = NONE;
+		last[stack] = NONE;
+		groups[stack] = 0;
+		for (int g = 0; cursor != NONE; g++)
+		{
+			int at = cursor * CURSOR_BYTES;
+			int next = cursors.getInt(at + NEXT);
+			int count = cursors.getInt(at + COUNT);
+			if (picked[g] == count)
+				addToBatch(cursor);
+			else
+			{
+				append(stack, cursor);
+				if (picked[g] > 0)
+				{
+					cursors.putInt(at + COUNT, count - picked[g]);
+					addToBatch(newCursor(cursors.getInt(at + BALLOT), cursors.getInt(at + POSITION), picked[g],
+							cursors.getLong(at + VALUE)));
+				}
+			}
+			cursor = next;
+		}
+		assert batchIsDistinct();
+	}
+
+	public void takeFraction(int stack, long surplus, long total)
+	{
+		batchSize = 0;
+		for (int cursor = first[stack]; cursor != NONE; cursor = cursors.getInt(cursor * CURSOR_BYTES + NEXT))
+		{
+			int at = cursor * CURSOR_BYTES;
+			long value = cursors.getLong(at + VALUE);
+			long transferValue = Tabulator.transferValue(value, surplus, total);
+			if (transferValue <= 0)
+				continue;
+			cursors.putLong(at + VALUE, value - transferValue);
+			addToBatch(newCursor(cursors.getInt(at + BALLOT), cursors.getInt(at + POSITION),
+					cursors.getInt(at + COUNT), transferValue));
+		}
+		assert batchIsDistinct();
+	}
+
+	public int batchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * Safe to call for different i on different threads at once (see the class
+	 * comment): it only writes the POSITION of cursor i's own slice of the buffer
+	 */
+	public int skipTo(int i, BitSet continuing)
+	{
+		int at = batch.getInt(i * 4) * CURSOR_BYTES;
+		int ballot = cursors.getInt(at + BALLOT);
+		int position = cursors.getInt(at + POSITION);
+		int length = ballots.getLength(ballot);
+		while (position < length && !continuing.get(ballots.getRank(ballot, position)))
+			position++;
+		cursors.putInt(at + POSITION, position);
+		return (position < length) ? ballots.getRank(ballot, position) : BallotCursor.EXHAUSTED;
+	}
+
+	public int getCount(int i)
+	{
+		return cursors.getInt(batch.getInt(i * 4) * CURSOR_BYTES + COUNT);
+	}
+
+	public long getVotes(int i)
+	{
+		int at = batch.getInt(i * 4) * CURSOR_BYTES;
+		return cursors.getInt(at + COUNT) * cursors.getLong(at + VALUE);
+	}
+
+	public String toString(int i, CandidateDictionary dictionary, BitSet continuing)
+	{
+		int at = batch.getInt(i * 4) * CURSOR_BYTES;
+		return BallotCursor.toString(ballots, cursors.getInt(at + BALLOT), cursors.getInt(at + POSITION),
+				cursors.getInt(at + COUNT), cursors.getLong(at + VALUE), dictionary, continuing);
+	}
+
+	public void placeBatch()
+	{
+		int exhausted = first.length - 1;
+		for (int i = 0; i < batchSize; i++)
+		{
+			int cursor = batch.getInt(i * 4);
+			int at = cursor * CURSOR_BYTES;
+			int ballot = cursors.getInt(at + BALLOT);
+			int position = cursors.getInt(at + POSITION);
+			append((position < ballots.getLength(ballot)) ? ballots.getRank(ballot, position) : exhausted, cursor);
+		}
+		batchSize = 0;
+	}
+
+	public boolean isEmpty(int stack)
+	{
+		return groups[stack] == 0;
+	}
+
+	/**
+	 * Adds a cursor at the end of the buffer, making the buffer bigger if it is full
+	 * @return  the new cursor's number
+	 */
+	private int newCursor(int ballot, int position, int count, long value)
+	{
+		if ((long) (cursorCount + 1) * CURSOR_BYTES > cursors.capacity())
+			cursors = bigger(cursors, (long) (cursorCount + 1) * CURSOR_BYTES, CURSOR_BYTES);
+		int at = cursorCount * CURSOR_BYTES;
+		cursors.putInt(at + BALLOT, ballot);
+		cursors.putInt(at + POSITION, position);
+		cursors.putInt(at + COUNT, count);
+		cursors.putInt(at + NEXT, NONE);
+		cursors.putLong(at + VALUE, value);
+		return cursorCount++;
+	}
+
+	private void addToBatch(int cursor)
+	{
+		if ((long) (batchSize + 1) * 4 > batch.capacity())
+			batch = bigger(batch, (long) (batchSize + 1) * 4, 4);
+		batch.putInt(batchSize * 4, cursor);
+		batchSize++;
+	}
+
+	/**
+	 * @return  true if no cursor is in the batch more than once, so parallel
+	 *          skipTo calls each write a different cursor
+	 */
+	private boolean batchIsDistinct()
+	{
+		BitSet seen = new BitSet(cursorCount);
+		for (int i = 0; i < batchSize; i++)
+		{
+			int cursor = batch.getInt(i * 4);
+			if (seen.get(cursor))
+				return false;
+			seen.set(cursor);
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a full buffer into one twice the size
+	 * @param buffer  the buffer
+	 * @param needed  the number of bytes it must hold
+	 * @param unit  the size of each entry
+	 * @return  the new buffer
+	 */
+	private static ByteBuffer bigger(ByteBuffer buffer, long needed, int unit)
+	{
+		long capacity = Math.min(Integer.MAX_VALUE - unit, 2L * buffer.capacity());
+		if (needed > capacity)
+			throw new IllegalStateException("Too many ballot cursors to count off the heap");
+		ByteBuffer result = ByteBuffer.allocateDirect((int) (capacity - capacity % unit));
+		buffer.clear();
+		result.put(buffer);
+		return result;
+	}
+
+	/**
+	 * Adds a cursor to the end of a stack
+	 */
+	private void append(int stack, int cursor)
+	{
+		cursors.putInt(cursor * CURSOR_BYTES + NEXT, NONE);
+		if (last[stack] == NONE)
+			first[stack] = cursor;
+		else
+			cursors.putInt(last[stack] * CURSOR_BYTES + NEXT, cursor);
+		last[stack] = cursor;
+		groups[stack]++;
+	}
+
+	/**
+	 * @return  true if a continuing candidate is ranked below the cursor's current one
+	 */
+	private boolean hasNextPreference(int cursor, BitSet continuing)
+	{
+		int at = cursor * CURSOR_BYTES;
+		int ballot = cursors.getInt(at + BALLOT);
+		int length = ballots.getLength(ballot);
+		for (int i = cursors.getInt(at + POSITION) + 1; i < length; i++)
+		{
+			if (continuing.get(ballots.getRank(ballot, i)))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,215 @@
+package beta;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A DirectBallotStore keeps its ballots outside the Java heap, in direct
+ * ByteBuffers, so an election with millions of ballots takes almost no heap
+ * and gives the garbage collector nothing to do. Together with
+ * DirectBallotStacks, which keep the cursors and stacks outside the heap too,
+ * the heap a count needs doesn't grow with the number of ballots.
+ *
+ * The rankings are packed one after another as shorts (candidate ids), with an
+ * int for where each ballot starts and, only if some ballot stands for more
+ * than one, an int count for each ballot.
+ *
+ * readForm reads a Google form csv file straight into a store, a row at a time,
+ * without making a Ballot or a String for each row. A Builder can fill a store
+ * from anywhere else.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class DirectBallotStore implements BallotStore
+{
+	private CandidateDictionary dictionary;
+	private ByteBuffer ranks; // a short for each rank of each ballot
+	private ByteBuffer starts; // an int for where each ballot starts in ranks, and one for the end
+	private ByteBuffer counts; // an int for each ballot, or null if every count is 1
+	private int size;
+
+	private DirectBallotStore(CandidateDictionary dictionary, ByteBuffer ranks, ByteBuffer starts, ByteBuffer counts,
+			int size)
+	{
+		this.dictionary = dictionary;
+		this.ranks = ranks;
+		this.starts = starts;
+		this.counts = counts;
+		this.size = size;
+	}
+
+	/**
+	 * Reads a Google form csv file. Rows that are not valid are reported and
+	 * skipped, and blank lines are skipped, as in GoogleFormReader.
+	 * @param filename  name of the csv file, including the extension
+	 * @return  the store
+	 * @throws IOException  if the file can't be read
+	 */
+	public static DirectBallotStore readForm(String filename) throws IOException
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		BufferedReader input = new BufferedReader(
+				new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8), 1 << 16);
+		Builder builder;
+		try
+		{
+			CsvCursor cursor = new CsvCursor(input);
+			cursor.nextRecord();
+			CandidateDictionary dictionary = new CandidateDictionary(
+					GoogleCSVConverter.getCandidateList(cursor.recordAsString()));
+			builder = new Builder(dictionary);
+			short[] slots = new short[dictionary.size()];
+			short[] ranking = new short[dictionary.size()];
+			while (cursor.nextRecord())
+			{
+				if (cursor.isBlank())
+					continue;
+				cursor.nextField(); // the timestamp
+				if (!GoogleFormReader.fillSlots(cursor, slots))
+				{
+					System.out.println("This ballot is considered invalid: " + cursor.recordAsString());
+					continue;
+				}
+				int length = 0;
+				for (short id : slots)
+				{
+					if (id != -1)
+						ranking[length++] = id;
+				}
+				builder.add(ranking, length, 1);
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+		Metrics.stop(sample);
+		return builder.build();
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getCount(int ballot)
+	{
+		return (counts == null) ? 1 : counts.getInt(4 * ballot);
+	}
+
+	public int getLength(int ballot)
+	{
+		return starts.getInt(4 * ballot + 4) - starts.getInt(4 * ballot);
+	}
+
+	public int getRank(int ballot, int rank)
+	{
+		return ranks.getShort(2 * (starts.getInt(4 * ballot) + rank));
+	}
+
+	public String getLabel(int ballot)
+	{
+		return "Ballot " + (ballot + 1);
+	}
+
+	/**
+	 * @return  the number of bytes the store holds outside the heap
+	 */
+	public long getDirectBytes()
+	{
+		return ranks.capacity() + starts.capacity() + ((counts == null) ? 0 : counts.capacity());
+	}
+
+	/**
+	 * Fills a DirectBallotStore one ballot at a time. The buffers start small
+	 * and double when they fill up.
+	 */
+	public static class Builder
+	{
+		private CandidateDictionary dictionary;
+		private ByteBuffer ranks = ByteBuffer.allocateDirect(1 << 16);
+		private ByteBuffer starts = ByteBuffer.allocateDirect(1 << 14);
+		private ByteBuffer counts; // made when the first count other than 1 is added
+		private int size;
+		private int rankCount;
+
+		/**
+		 * @param dictionary  the candidates the ballots rank
+		 */
+		public Builder(CandidateDictionary dictionary)
+		{
+			this.dictionary = dictionary;
+			starts.putInt(0, 0);
+		}
+
+		/**
+		 * Adds a ballot
+		 * @param ranking  the ids in order of preference
+		 * @param length  the number of ids in ranking to use
+		 * @param count  the number of identical ballots it stands for
+		 */
+		public void add(short[] ranking, int length, int count)
+		{
+			if (2L * (rankCount + length) > Integer.MAX_VALUE || 4L * (size + 2) > Integer.MAX_VALUE)
+				throw new IllegalStateException("Too many ballots for one DirectBallotStore");
+			ranks = ensureCapacity(ranks, 2 * (rankCount + length));
+			for (int rank = 0; rank < length; rank++)
+				ranks.putShort(2 * (rankCount + rank), ranking[rank]);
+			rankCount += length;
+			starts = ensureCapacity(starts, 4 * (size + 2));
+			starts.putInt(4 * (size + 1), rankCount);
+			if (count != 1 && counts == null)
+			{
+				counts = ByteBuffer.allocateDirect(Math.max(1 << 14, starts.capacity()));
+				for (int b = 0; b < size; b++)
+					counts.putInt(4 * b, 1);
+			}
+			if (counts != null)
+			{
+				counts = ensureCapacity(counts, 4 * (size + 1));
+				counts.putInt(4 * size, count);
+			}
+			size++;
+		}
+
+		/**
+		 * @return  the store, with buffers cut down to what was used
+		 */
+		public DirectBallotStore build()
+		{
+			return new DirectBallotStore(dictionary, trim(ranks, 2 * rankCount), trim(starts, 4 * (size + 1)),
+					(counts == null) ? null : trim(counts, 4 * size), size);
+		}
+
+		private static ByteBuffer ensureCapacity(ByteBuffer buffer, int needed)
+		{
+			if (needed <= buffer.capacity())
+				return buffer;
+			int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * buffer.capacity()));
+			ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+			buffer.clear();
+			bigger.put(buffer);
+			return bigger;
+		}
+
+		private static ByteBuffer trim(ByteBuffer buffer, int length)
+		{
+			if (length == buffer.capacity())
+				return buffer;
+			ByteBuffer trimmed = ByteBuffer.allocateDirect(Math.max(1, length));
+			buffer.clear().limit(length);
+			trimmed.put(buffer);
+			return trimmed;
+		}
+	}
+}
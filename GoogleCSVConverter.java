@@ -3,9 +3,10 @@ package beta;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
 
 public class GoogleCSVConverter
 {
@@ -26,15 +27,15 @@ public class GoogleCSVConverter
 	 * because Fred is ranked 2nd, Wilma is blank, Betty was ranked 1st, Barney 3rd, no one 4th, Bamm-bamm 5th
 	 */
 
-	private static PrintStream outputFile;
+	private static PrintWriter outputFile;
 
 	public static void convertCSVGoogleFile(String filename)
 	{
-		
+		Metrics.Sample sample = Metrics.start("ingest.convert");
 		File outfile = new File(filename + ".txt"); 
 		try
 		{
-			outputFile = new PrintStream(outfile);
+			outputFile = new PrintWriter(outfile);
 		}
 		catch (FileNotFoundException e)
 		{
@@ -50,55 +51,65 @@ public class GoogleCSVConverter
 		{
 			e.printStackTrace();
 		}
-		Scanner fileScanner = new Scanner(inputFile);
-		String header = fileScanner.nextLine();
-		ArrayList<String> candList = getCandidateList(header);
-		String line;
-
-		while (fileScanner.hasNextLine())
+		CsvCursor cursor = new CsvCursor(inputFile);
+		try
 		{
-			line = fileScanner.nextLine();
-			ArrayList<String> tokenizedRankings = VoteTools.tokenizeString(line, ',');
-			String timestamp = tokenizedRankings.remove(0);
-			ArrayList<String> slots = makeSlotsList(candList.size());
-			int rankIndex = 0;
-			for (String candidateName : candList)
+			cursor.nextRecord();
+			ArrayList<String> candList = getCandidateList(cursor.recordAsString());
+			ArrayList<String> escapedCandList = new ArrayList<String>();
+			for (String name : candList)
+			{
+				escapedCandList.add(CsvCursor.escape(name));
+			}
+			String[] slots = new String[candList.size()];
+
+			while (cursor.nextRecord())
 			{
-				if (tokenizedRankings.get(rankIndex).length() > 0) // if the ranking isn't blank
+				if (cursor.isBlank())
+					continue; // not a ballot (see GoogleFormReader)
+				cursor.nextField();
+				char[] timestamp = cursor.getBuffer();
+				int timestampStart = cursor.fieldStart();
+				int timestampLength = cursor.fieldLength();
+				Arrays.fill(slots, "");
+				for (String candidateName : escapedCandList)
 				{
-					int pos = Integer.parseInt(tokenizedRankings.get(rankIndex)) - 1;
-					slots.set(pos, candidateName);
+					if (cursor.nextField() && !cursor.fieldIsEmpty()) // if the ranking isn't blank
+					{
+						int pos = cursor.fieldAsInt() - 1;
+						slots[pos] = candidateName;
+					}
 				}
-				rankIndex++;
+				writeTheConvertedBallotToOutput(timestamp, timestampStart, timestampLength, slots);
 			}
-			writeTheConvertedBallotToOutput(timestamp, slots);
-		//	System.out.println("Record: " + timestamp + " " + slots);
+			inputFile.close();
 		}
-
-		fileScanner.close();
-	}
-
-	private static void writeTheConvertedBallotToOutput(String timestamp, ArrayList<String> slots)
-	{
-		outputFile.print(timestamp);
-		for (String name : slots)
+		catch (IOException e)
 		{
-			outputFile.print("," + name);
+			e.printStackTrace();
 		}
-		outputFile.println();
+		outputFile.close();
+		Metrics.stop(sample);
 	}
 
-	private static ArrayList<String> makeSlotsList(int size)
+	private static void writeTheConvertedBallotToOutput(char[] buffer, int timestampStart, int timestampLength,
+			String[] slots)
 	{
-		ArrayList<String> result = new ArrayList<String>();
-		for (int i = 0; i < size; i++)
+		outputFile.write(buffer, timestampStart, timestampLength);
+		for (String name : slots)
 		{
-			result.add("");
+			outputFile.print(',');
+			outputFile.print(name);
 		}
-		return result;
+		outputFile.println();
 	}
 
-	private static ArrayList<String> getCandidateList(String header)
+	/**
+	 * Gets the candidate names from the header of the Google form csv file
+	 * @param header  the first line of the csv file
+	 * @return  the names found between brackets in each column label, in column order
+	 */
+	static ArrayList<String> getCandidateList(String header)
 	{
 		ArrayList<String> tokenizedHeader = VoteTools.tokenizeString(header, ',');
 		tokenizedHeader.remove(0); // discard timestamp column label
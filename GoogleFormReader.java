@@ -0,0 +1,212 @@
+package beta;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class reads the csv file downloaded from a Google form in a single pass
+ * and hands out the candidate list (from the header) and the ballots (from the
+ * rows) directly, without writing and re-reading a txt file.
+ *
+ * The header names the candidates in brackets, e.g. "Rank the flavors [Vanilla]",
+ * and each row is a timestamp followed by the rank given to each candidate (see
+ * GoogleCSVConverter for an example). The txt file GoogleCSVConverter writes can
+ * still be written as a side output with setTextOutput.
+ *
+ * A blank line is not a ballot and is skipped, as it is by every reader of these
+ * files (ParallelFormReader, DirectBallotStore, LiveTabulation, GoogleCSVConverter
+ * and BallotReader), so it never changes the threshold. A row with a timestamp
+ * and no ranks is an empty ballot, and is counted.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class GoogleFormReader
+{
+	private String filename;
+	private String textOutputName;
+	private CandidateDictionary dictionary;
+
+	/**
+	 * @param filename  name of the csv file, including the extension
+	 */
+	public GoogleFormReader(String filename)
+	{
+		this.filename = filename;
+	}
+
+	/**
+	 * Also write each ballot as a line of names, in the format of the txt file
+	 * made by GoogleCSVConverter
+	 * @param textOutputName  name of the txt file to write
+	 */
+	public void setTextOutput(String textOutputName)
+	{
+		this.textOutputName = textOutputName;
+	}
+
+	/**
+	 * @return  the candidates named in the header, in column order (after a read)
+	 */
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	/**
+	 * Reads the file making one Ballot for each row
+	 * @return  the list of ballots
+	 */
+	public ArrayList<Ballot> readBallots()
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		ArrayList<Ballot> ballots = read(false);
+		Metrics.stop(sample);
+		return ballots;
+	}
+
+	/**
+	 * Reads the file collapsing identical rankings into groups as they are read
+	 * @return  the list of ballot groups
+	 */
+	public ArrayList<Ballot> readBallotGroups()
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		ArrayList<Ballot> groups = read(true);
+		Metrics.stop(sample);
+		return groups;
+	}
+
+	private ArrayList<Ballot> read(boolean group)
+	{
+		ArrayList<Ballot> ballots = new ArrayList<Ballot>();
+		FileReader inputFile = null;
+		try
+		{
+			inputFile = new FileReader(filename);
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+			return ballots;
+		}
+		PrintStream outputFile = null;
+		if (textOutputName != null)
+		{
+			try
+			{
+				outputFile = new PrintStream(new File(textOutputName));
+			}
+			catch (FileNotFoundException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		try
+		{
+			CsvCursor cursor = new CsvCursor(inputFile);
+			cursor.nextRecord();
+			dictionary = new CandidateDictionary(GoogleCSVConverter.getCandidateList(cursor.recordAsString()));
+			BallotGrouper grouper = new BallotGrouper(dictionary);
+			short[] slots = new short[dictionary.size()];
+			while (cursor.nextRecord())
+			{
+				if (cursor.isBlank())
+					continue;
+				cursor.nextField();
+				String timestamp = (group && outputFile == null) ? null : cursor.fieldAsString();
+				if (!fillSlots(cursor, slots))
+				{
+					System.out.println("This ballot is considered invalid: " + cursor.recordAsString());
+					continue;
+				}
+				if (outputFile != null)
+					writeTheConvertedBallotToOutput(outputFile, timestamp, slots);
+				short[] ranking = closeUpSlots(slots);
+				if (group)
+					grouper.add(ranking, 1);
+				else
+					ballots.add(new Ballot(timestamp, ranking, 1, dictionary));
+			}
+			inputFile.close();
+			if (group)
+				ballots = grouper.getGroups();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		if (outputFile != null)
+			outputFile.close();
+		return ballots;
+	}
+
+	/**
+	 * Puts the id of each candidate in a row into the slot for the rank they were given
+	 * @param cursor  the row, after the timestamp: the rank for each candidate
+	 * @param slots  one for each candidate; filled with the id ranked at each
+	 *               position, or -1 if none
+	 * @return  false if the rankings are not valid
+	 */
+	static boolean fillSlots(CsvCursor cursor, short[] slots)
+	{
+		Arrays.fill(slots, (short) -1);
+		for (int id = 0; id < slots.length && cursor.nextField(); id++)
+		{
+			if (!cursor.fieldIsEmpty()) // if the ranking isn't blank
+			{
+				int pos;
+				try
+				{
+					pos = cursor.fieldAsInt() - 1;
+				}
+				catch (NumberFormatException e)
+				{
+					return false;
+				}
+				if (pos < 0 || pos >= slots.length || slots[pos] != -1)
+					return false;
+				slots[pos] = (short) id;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param slots  the id ranked at each position, or -1 if none
+	 * @return  the ids in order of preference with the empty slots left out
+	 */
+	static short[] closeUpSlots(short[] slots)
+	{
+		int length = 0;
+		for (short id : slots)
+		{
+			if (id != -1)
+				length++;
+		}
+		short[] ranking = new short[length];
+		length = 0;
+		for (short id : slots)
+		{
+			if (id != -1)
+				ranking[length++] = id;
+		}
+		return ranking;
+	}
+
+	private void writeTheConvertedBallotToOutput(PrintStream outputFile, String timestamp, short[] slots)
+	{
+		outputFile.print(timestamp);
+		for (short id : slots)
+		{
+			outputFile.print("," + (id == -1 ? "" : CsvCursor.escape(dictionary.nameOf(id))));
+		}
+		outputFile.println();
+	}
+}
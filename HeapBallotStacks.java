@@ -0,0 +1,133 @@
+package beta;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * HeapBallotStacks keep the cursors of a count as BallotCursor objects on the
+ * heap, with an ArrayList of them for each stack (see BallotStacks). A stack
+ * may hold groups of identical ballots, so the number of ballots in it is the
+ * sum of the cursor counts.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class HeapBallotStacks implements BallotStacks
+{
+	private BallotStore ballots;
+	private ArrayList<BallotCursor>[] stacks; // one for each candidate, and the exhausted stack last
+	private ArrayList<BallotCursor> batch;
+
+	/**
+	 * Empty stacks for counting a store
+	 * @param ballots  the ballots to count
+	 */
+	public HeapBallotStacks(BallotStore ballots)
+	{
+		this.ballots = ballots;
+		int size = ballots.getDictionary().size() + 1;
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		ArrayList<BallotCursor>[] newStacks = new ArrayList[size];
+		stacks = newStacks;
+		for (int i = 0; i < size; i++)
+			stacks[i] = new ArrayList<BallotCursor>();
+		batch = new ArrayList<BallotCursor>();
+	}
+
+	public void takeFirstCount()
+	{
+		batch = new ArrayList<BallotCursor>(ballots.size());
+		for (int b = 0; b < ballots.size(); b++)
+			batch.add(new BallotCursor(ballots, b));
+	}
+
+	public void takeAll(int stack)
+	{
+		batch = stacks[stack];
+		stacks[stack] = new ArrayList<BallotCursor>();
+	}
+
+	public int[] movableCounts(int stack, BitSet continuing)
+	{
+		ArrayList<BallotCursor> list = stacks[stack];
+		int[] counts = new int[list.size()];
+		for (int g = 0; g < list.size(); g++)
+		{
+			if (list.get(g).hasNextPreference(continuing))
+				counts[g] = list.get(g).getCount();
+		}
+		return counts;
+	}
+
+	public void takeBallots(int stack, int[] picked)
+	{
+		ArrayList<BallotCursor> list = stacks[stack];
+		ArrayList<BallotCursor> kept = new ArrayList<BallotCursor>(list.size());
+		batch = new ArrayList<BallotCursor>();
+		for (int g = 0; g < list.size(); g++)
+		{
+			BallotCursor group = list.get(g);
+			if (picked[g] == group.getCount())
+				batch.add(group);
+			else
+			{
+				kept.add(group);
+				if (picked[g] > 0)
+					batch.add(group.split(picked[g]));
+			}
+		}
+		stacks[stack] = kept;
+	}
+
+	public void takeFraction(int stack, long surplus, long total)
+	{
+		batch = new ArrayList<BallotCursor>();
+		for (BallotCursor b : stacks[stack])
+		{
+			long transferValue = Tabulator.transferValue(b.getValue(), surplus, total);
+			if (transferValue > 0)
+				batch.add(b.splitValue(transferValue));
+		}
+	}
+
+	public int batchSize()
+	{
+		return batch.size();
+	}
+
+	public int skipTo(int i, BitSet continuing)
+	{
+		return batch.get(i).skipTo(continuing);
+	}
+
+	public int getCount(int i)
+	{
+		return batch.get(i).getCount();
+	}
+
+	public long getVotes(int i)
+	{
+		return batch.get(i).getVotes();
+	}
+
+	public String toString(int i, CandidateDictionary dictionary, BitSet continuing)
+	{
+		return batch.get(i).toString(dictionary, continuing);
+	}
+
+	public void placeBatch()
+	{
+		int exhausted = stacks.length - 1;
+		for (BallotCursor b : batch)
+		{
+			int id = b.current();
+			stacks[(id == BallotCursor.EXHAUSTED) ? exhausted : id].add(b);
+		}
+		batch = new ArrayList<BallotCursor>();
+	}
+
+	public boolean isEmpty(int stack)
+	{
+		return stacks[stack].isEmpty();
+	}
+}
@@ -0,0 +1,98 @@
+package beta;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a ResultsReport as an html page with the results grid as a table.
+ * Winners' cells have the class "elected" and eliminated candidates' cells the
+ * class "eliminated", so the page can be styled.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class HtmlReportRenderer implements ReportRenderer
+{
+	public String getExtension()
+	{
+		return "html";
+	}
+
+	public void render(ResultsReport report, Writer out) throws IOException
+	{
+		StringBuilder html = new StringBuilder();
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n");
+		html.append("<title>Ranked choice voting results</title>\n");
+		html.append("<style>\n");
+		html.append("table { border-collapse: collapse; }\n");
+		html.append("th, td { border: 1px solid #888; padding: 2px 8px; text-align: center; }\n");
+		html.append("th.name { text-align: left; }\n");
+		html.append(".elected { font-weight: bold; background: #d8f0d8; }\n");
+		html.append(".eliminated { color: #888; }\n");
+		html.append("</style>\n</head>\n<body>\n");
+		html.append("<h1>Final results</h1>\n");
+		html.append("<p>Threshold = ").append(report.getThreshold()).append("</p>\n");
+		if (report.getTransferMode() == Tabulator.TransferMode.FRACTIONAL)
+			html.append("<p>Surplus transfers are fractional</p>\n");
+		else
+			html.append("<p>Surplus selection seed = ").append(report.getSeed()).append("</p>\n");
+
+		html.append("<table>\n<tr><th>Names</th>");
+		for (int round = 1; round <= report.getRoundCount(); round++)
+			html.append("<th>").append(round).append("</th>");
+		html.append("</tr>\n");
+		out.append(html);
+
+		for (int id = 0; id < report.getCandidateCount(); id++)
+		{
+			html.setLength(0);
+			html.append("<tr><th class=\"name\">").append(escape(report.getName(id))).append("</th>");
+			for (int round = 1; round <= report.getRoundCount(); round++)
+			{
+				CandidateState state = report.getState(id, round);
+				if (state == CandidateState.ELECTED)
+					html.append("<td class=\"elected\">");
+				else if (state == CandidateState.ELIMINATED)
+					html.append("<td class=\"eliminated\">");
+				else
+					html.append("<td>");
+				html.append(TextReportRenderer.cell(report, id, round)).append("</td>");
+			}
+			html.append("</tr>\n");
+			out.append(html);
+		}
+
+		html.setLength(0);
+		html.append("<tr><th class=\"name\">Exhausted</th>");
+		for (int round = 1; round <= report.getRoundCount(); round++)
+			html.append("<td>").append(Tabulator.formatVotes(report.getExhausted(round))).append("</td>");
+		html.append("</tr>\n</table>\n");
+		html.append("<p>Winner").append((report.getWinners().size() == 1) ? " is" : "s are").append(": ");
+		html.append(escape(TextReportRenderer.winnerList(report))).append("</p>\n");
+		html.append("</body>\n</html>\n");
+		out.append(html);
+	}
+
+	/**
+	 * @return  the text with the characters html treats specially escaped
+	 */
+	static String escape(String text)
+	{
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '<')
+				escaped.append("&lt;");
+			else if (c == '>')
+				escaped.append("&gt;");
+			else if (c == '&')
+				escaped.append("&amp;");
+			else if (c == '"')
+				escaped.append("&quot;");
+			else
+				escaped.append(c);
+		}
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,185 @@
+package beta;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a ResultsReport as a json object, for dashboards and other programs:
+ *
+ *   {"seats": 3, "threshold": 76, "transferMode": "WHOLE_BALLOTS", "seed": 42,
+ *    "rounds": 8, "complete": true,
+ *    "candidates": [{"name": "Mint chip", "result": "ELECTED", "votes": [43, 46, ...]}, ...],
+ *    "exhausted": [0, 1, ...],
+ *    "winners": ["Mango Sorbet", ...]}
+ *
+ * Votes are numbers (with decimals only for fractional transfers); a round
+ * after a candidate was eliminated is null.
+ *
+ * renderRounds writes the round history instead, with the votes each candidate
+ * gained or lost in each round and the rounds they were elected or eliminated.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class JsonReportRenderer implements ReportRenderer
+{
+	public String getExtension()
+	{
+		return "json";
+	}
+
+	public void render(ResultsReport report, Writer out) throws IOException
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"seats\": ").append(report.getSeats());
+		json.append(", \"threshold\": ").append(report.getThreshold());
+		json.append(", \"transferMode\": ").append(quote(report.getTransferMode().name()));
+		if (report.getTransferMode() == Tabulator.TransferMode.WHOLE_BALLOTS)
+			json.append(", \"seed\": ").append(report.getSeed());
+		json.append(", \"rounds\": ").append(report.getRoundCount());
+		json.append(", \"complete\": ").append(report.isComplete());
+		json.append(",\n \"candidates\": [");
+		out.append(json);
+
+		for (int id = 0; id < report.getCandidateCount(); id++)
+		{
+			json.setLength(0);
+			json.append(id == 0 ? "\n  " : ",\n  ");
+			json.append("{\"name\": ").append(quote(report.getName(id)));
+			json.append(", \"result\": ").append(quote(report.getFinalState(id).name()));
+			json.append(", \"votes\": [");
+			for (int round = 1; round <= report.getRoundCount(); round++)
+			{
+				if (round > 1)
+					json.append(", ");
+				if (report.getState(id, round) == CandidateState.ELIMINATED)
+					json.append("null");
+				else
+					json.append(Tabulator.formatVotes(report.getVotes(id, round)));
+			}
+			json.append("]}");
+			out.append(json);
+		}
+
+		json.setLength(0);
+		json.append("],\n \"exhausted\": [");
+		for (int round = 1; round <= report.getRoundCount(); round++)
+		{
+			if (round > 1)
+				json.append(", ");
+			json.append(Tabulator.formatVotes(report.getExhausted(round)));
+		}
+		json.append("],\n \"winners\": [");
+		boolean first = true;
+		for (int id : report.getWinners())
+		{
+			if (!first)
+				json.append(", ");
+			json.append(quote(report.getName(id)));
+			first = false;
+		}
+		json.append("]}\n");
+		out.append(json);
+	}
+
+	/**
+	 * Writes the round history of a report as a json object:
+	 *
+	 *   {"rounds": 8, "threshold": 76,
+	 *    "candidates": [{"name": "Mint chip", "elected": 8, "eliminated": null,
+	 *      "votes": [43, 46, ...], "transfers": [43, 3, ...]}, ...],
+	 *    "exhausted": [0, 1, ...], "exhaustedTransfers": [0, 1, ...]}
+	 *
+	 * A transfer is the change in votes in the round (the first count in round
+	 * 1), negative when votes were moved away.
+	 * @param report  the results
+	 * @param out  where to write them
+	 * @throws IOException  if they can't be written
+	 */
+	public static void renderRounds(ResultsReport report, Writer out) throws IOException
+	{
+		RoundHistory history = report.getHistory();
+		int rounds = history.getRoundCount();
+		StringBuilder json = new StringBuilder();
+		json.append("{\"rounds\": ").append(rounds);
+		json.append(", \"threshold\": ").append(report.getThreshold());
+		json.append(",\n \"candidates\": [");
+		out.append(json);
+
+		for (int id = 0; id < report.getCandidateCount(); id++)
+		{
+			json.setLength(0);
+			json.append(id == 0 ? "\n  " : ",\n  ");
+			json.append("{\"name\": ").append(quote(report.getName(id)));
+			json.append(", \"elected\": ").append(roundOrNull(history.getRoundElected(id)));
+			json.append(", \"eliminated\": ").append(roundOrNull(history.getRoundEliminated(id)));
+			json.append(", \"votes\": [");
+			for (int round = 1; round <= rounds; round++)
+			{
+				if (round > 1)
+					json.append(", ");
+				json.append(Tabulator.formatVotes(history.getVotes(id, round)));
+			}
+			json.append("], \"transfers\": [");
+			for (int round = 1; round <= rounds; round++)
+			{
+				if (round > 1)
+					json.append(", ");
+				json.append(Tabulator.formatVotes(history.getTransfer(id, round)));
+			}
+			json.append("]}");
+			out.append(json);
+		}
+
+		json.setLength(0);
+		json.append("],\n \"exhausted\": [");
+		for (int round = 1; round <= rounds; round++)
+		{
+			if (round > 1)
+				json.append(", ");
+			json.append(Tabulator.formatVotes(history.getExhausted(round)));
+		}
+		json.append("], \"exhaustedTransfers\": [");
+		for (int round = 1; round <= rounds; round++)
+		{
+			if (round > 1)
+				json.append(", ");
+			json.append(Tabulator.formatVotes(history.getExhaustedTransfer(round)));
+		}
+		json.append("]}\n");
+		out.append(json);
+	}
+
+	private static String roundOrNull(int round)
+	{
+		return (round == 0) ? "null" : round + "";
+	}
+
+	/**
+	 * Makes a json string
+	 * @param text  the text
+	 * @return  the text in quotes, with quotes, backslashes and control characters escaped
+	 */
+	public static String quote(String text)
+	{
+		StringBuilder quoted = new StringBuilder(text.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if (c == '\n')
+				quoted.append("\\n");
+			else if (c == '\r')
+				quoted.append("\\r");
+			else if (c == '\t')
+				quoted.append("\\t");
+			else if (c < ' ')
+				quoted.append(String.format("\\u%04x", (int) c));
+			else
+				quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -0,0 +1,86 @@
+package beta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.SplittableRandom;
+
+/**
+ * This is the main class for following a vote while it is still open (see
+ * usage notes below). The first choices are printed every time responses are
+ * added to the csv file, and a full count is done whenever it is asked for.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class LiveMain
+{
+	/*
+	 * Usage notes:
+	 * 1. Set up the Google form as in VoteMain, and set filename and the number
+	 *    of seats below
+	 * 2. Keep the responses csv file in this project's folder up to date while the
+	 *    vote is open (a sync tool, or downloading it again, both work)
+	 * 3. Run this file. The first choices are printed each time the file changes.
+	 *    Press enter to count the ballots so far, or type q and enter to stop.
+	 */
+	public static void main(String[] args)
+	{
+		int seatsToBeFilled = 3;
+		String filename = "iceCreamTest";
+		Tabulator.TransferMode transferMode = Tabulator.TransferMode.WHOLE_BALLOTS;
+
+		final LiveTabulation live = new LiveTabulation(filename + ".csv");
+		try
+		{
+			live.update();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		live.printTallies(System.out);
+
+		Thread watching = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					live.watch(System.out);
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}, "csv watcher");
+		watching.setDaemon(true);
+		watching.start();
+
+		BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+		try
+		{
+			String line;
+			while ((line = console.readLine()) != null && !line.trim().equalsIgnoreCase("q"))
+			{
+				live.update(); // in case a change was missed
+				ResultsReport report = live.recount(seatsToBeFilled, transferMode, new SplittableRandom().nextLong());
+				if (report == null)
+				{
+					System.out.println("No responses yet");
+					continue;
+				}
+				ReportRenderer.write(report, new TextReportRenderer(), "live report.txt");
+				System.out.println("\nCount of " + live.getBallotCount() + " ballots:");
+				System.out.println("Winner" + ((report.getWinners().size() == 1) ? " is" : "s are") + ": "
+						+ TextReportRenderer.winnerList(report) + " (full results in live report.txt)");
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		live.stop();
+	}
+}
@@ -0,0 +1,301 @@
+package beta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * A LiveTabulation follows a Google form csv file that is still growing while
+ * the vote is open. Each update reads only the rows added since the last one:
+ * the file is read from where the last update stopped, up to the last complete
+ * line (a row still being written is left for the next update).
+ *
+ * The first-choice tallies are kept up to date row by row. The ballots read so
+ * far are kept as groups (see BallotGrouper), so a full count can be done at
+ * any time with recount, without reading the file again.
+ *
+ * watch blocks, waiting for the file to change (with a WatchService on its
+ * folder) and updating when it does. If the file gets shorter (it was
+ * replaced with a new download), it is read again from the start.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class LiveTabulation
+{
+	private File file;
+	private long offset; // where the rows not read yet start
+	private CandidateDictionary dictionary;
+	private BallotGrouper grouper;
+	private long[] firstChoices; // number of ballots ranking each candidate first
+	private int exhaustedBallots; // valid ballots that rank no one
+	private int invalidBallots;
+	private BallotStore ballots; // the groups read so far, or null if rows were added since
+	private WatchService watcher;
+
+	/**
+	 * @param filename  name of the csv file, including the extension
+	 */
+	public LiveTabulation(String filename)
+	{
+		file = new File(filename).getAbsoluteFile();
+	}
+
+	/**
+	 * Reads the rows added to the file since the last update
+	 * @return  the number of rows read
+	 * @throws IOException  if the file can't be read
+	 */
+	public synchronized int update() throws IOException
+	{
+		if (!file.isFile())
+			return 0;
+		ByteBuffer added;
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"))
+		{
+			FileChannel channel = input.getChannel();
+			long size = channel.size();
+			if (size < offset)
+				reset();
+			if (size == offset)
+				return 0;
+			if (size - offset > Integer.MAX_VALUE)
+				throw new IOException("Too much added at once to " + file);
+			added = ByteBuffer.allocate((int) (size - offset));
+			while (added.hasRemaining() && channel.read(added, offset + added.position()) > 0)
+			{
+			}
+		}
+
+		int complete = endOfLastLine(added.array(), added.position());
+		if (complete == 0)
+			return 0;
+		offset += complete;
+		CsvCursor cursor = new CsvCursor(new StringReader(new String(added.array(), 0, complete, StandardCharsets.UTF_8)));
+		if (dictionary == null)
+		{
+			cursor.nextRecord();
+			dictionary = new CandidateDictionary(GoogleCSVConverter.getCandidateList(cursor.recordAsString()));
+			grouper = new BallotGrouper(dictionary);
+			firstChoices = new long[dictionary.size()];
+		}
+		int rows = 0;
+		short[] slots = new short[dictionary.size()];
+		while (cursor.nextRecord())
+		{
+			if (cursor.isBlank())
+				continue;
+			rows++;
+			cursor.nextField(); // the timestamp
+			if (!GoogleFormReader.fillSlots(cursor, slots))
+			{
+				invalidBallots++;
+				continue;
+			}
+			short[] ranking = GoogleFormReader.closeUpSlots(slots);
+			grouper.add(ranking, 1);
+			if (ranking.length == 0)
+				exhaustedBallots++;
+			else
+				firstChoices[ranking[0]]++;
+		}
+		ballots = null;
+		return rows;
+	}
+
+	/**
+	 * Finds the end of the last complete line. A line break inside quotes (which
+	 * only the header should have) does not end a line.
+	 * @return  the number of bytes up to and including the last line break
+	 */
+	private static int endOfLastLine(byte[] bytes, int length)
+	{
+		boolean quoted = false;
+		int end = 0;
+		for (int i = 0; i < length; i++)
+		{
+			if (bytes[i] == '"')
+				quoted = !quoted;
+			else if (bytes[i] == '\n' && !quoted)
+				end = i + 1;
+		}
+		return end;
+	}
+
+	private void reset()
+	{
+		offset = 0;
+		dictionary = null;
+		grouper = null;
+		firstChoices = null;
+		exhaustedBallots = 0;
+		invalidBallots = 0;
+		ballots = null;
+	}
+
+	/**
+	 * @return  the candidates named in the header, or null if it hasn't been read
+	 */
+	public synchronized CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	/**
+	 * @return  the number of valid ballots read so far
+	 */
+	public synchronized int getBallotCount()
+	{
+		return (grouper == null) ? 0 : grouper.getBallotCount();
+	}
+
+	public synchronized int getInvalidBallotCount()
+	{
+		return invalidBallots;
+	}
+
+	/**
+	 * @param id  a candidate
+	 * @return  the number of ballots so far ranking the candidate first
+	 */
+	public synchronized long getFirstChoices(int id)
+	{
+		return firstChoices[id];
+	}
+
+	/**
+	 * The ballots read so far, grouped. The same store is handed out until more
+	 * rows are read.
+	 * @return  the ballots, or null if the header hasn't been read
+	 */
+	public synchronized BallotStore getBallots()
+	{
+		if (ballots == null && dictionary != null)
+			ballots = new BallotList(dictionary, grouper.getGroups());
+		return ballots;
+	}
+
+	/**
+	 * Does a full count of the ballots read so far
+	 * @param seats  the number of seats to fill
+	 * @param transferMode  how a winner's surplus is transferred
+	 * @param seed  the seed for picking surplus ballots
+	 * @return  the results, or null if the header hasn't been read
+	 */
+	public ResultsReport recount(int seats, Tabulator.TransferMode transferMode, long seed)
+	{
+		BallotStore store = getBallots();
+		if (store == null)
+			return null;
+		Tabulator tallier = new Tabulator(store, seats, transferMode, seed);
+		tallier.tabulate();
+		return tallier.getReport();
+	}
+
+	/**
+	 * Prints the first-choice tallies, most first
+	 * @param out  where to print
+	 */
+	public synchronized void printTallies(PrintStream out)
+	{
+		if (dictionary == null)
+		{
+			out.println("No responses yet");
+			return;
+		}
+		out.println("\nFirst choices after " + grouper.getBallotCount() + " ballots"
+				+ (invalidBallots > 0 ? " (and " + invalidBallots + " invalid)" : "") + ":");
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (int id = 0; id < dictionary.size(); id++)
+			ids.add(id);
+		Collections.sort(ids, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(firstChoices[b], firstChoices[a]);
+			}
+		});
+		for (int id : ids)
+			out.println(String.format("%8d  %s", firstChoices[id], dictionary.nameOf(id)));
+		if (exhaustedBallots > 0)
+			out.println(String.format("%8d  %s", exhaustedBallots, "(no one ranked)"));
+	}
+
+	/**
+	 * Waits for the file to change and reads the new rows each time it does,
+	 * printing the tallies when there are any. Returns when stop is called or
+	 * the thread is interrupted.
+	 * @param out  where to print the tallies
+	 * @throws IOException  if the file or its folder can't be read
+	 */
+	public void watch(PrintStream out) throws IOException
+	{
+		Path folder = file.toPath().getParent();
+		Path name = file.toPath().getFileName();
+		synchronized (this)
+		{
+			watcher = FileSystems.getDefault().newWatchService();
+		}
+		folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (name.equals(event.context()))
+						changed = true;
+				}
+				key.reset();
+				if (changed && update() > 0)
+					printTallies(out);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException e)
+		{
+			// stop was called
+		}
+		finally
+		{
+			watcher.close();
+		}
+	}
+
+	/**
+	 * Makes watch return
+	 */
+	public synchronized void stop()
+	{
+		if (watcher == null)
+			return;
+		try
+		{
+			watcher.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package beta;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Metrics keeps track of where the time goes in a count: how long each phase
+ * took (reading, each round, writing the report), how much memory it
+ * allocated, and counts like the number of ballots moved.
+ *
+ * A phase is timed by calling start before it and stop after it. The numbers
+ * are kept in two places:
+ * 1. in this class, if it is enabled (setEnabled, or run with -Drcv.metrics=true),
+ *    to be printed with printSummary
+ * 2. as JDK Flight Recorder events (in the "CRLS RCV" category), if a recording
+ *    is running, for example with -XX:StartFlightRecording=filename=count.jfr
+ * When neither is on, start returns null and nothing is allocated or timed, so
+ * the calls can be left in the hot paths.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class Metrics
+{
+	private static boolean enabled = Boolean.getBoolean("rcv.metrics");
+	private static ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+	private static ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final static EventType PHASE_TYPE = EventType.getEventType(PhaseEvent.class);
+	private final static EventType TRANSFER_TYPE = EventType.getEventType(TransferEvent.class);
+	private static com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * @param enabled  true to keep the numbers for printSummary
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		Metrics.enabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Forgets every number kept so far
+	 */
+	public static void reset()
+	{
+		timers.clear();
+		counters.clear();
+	}
+
+	/**
+	 * Starts timing a phase
+	 * @param phase  the name of the phase, like "tabulate.eliminate"
+	 * @return  the sample to pass to stop, or null if nothing is being kept
+	 */
+	public static Sample start(String phase)
+	{
+		if (!enabled && !PHASE_TYPE.isEnabled())
+			return null;
+		return new Sample(phase, new PhaseEvent());
+	}
+
+	/**
+	 * Finishes timing a phase
+	 * @param sample  what start returned (may be null)
+	 */
+	public static void stop(Sample sample)
+	{
+		if (sample == null)
+			return;
+		long nanos = System.nanoTime() - sample.startNanos;
+		long bytes = threads.getCurrentThreadAllocatedBytes() - sample.startBytes;
+		if (sample.event.shouldCommit())
+		{
+			sample.event.phase = sample.phase;
+			sample.event.bytesAllocated = bytes;
+			sample.event.commit();
+		}
+		if (enabled)
+		{
+			Timer timer = timers.get(sample.phase);
+			if (timer == null)
+			{
+				timers.putIfAbsent(sample.phase, new Timer());
+				timer = timers.get(sample.phase);
+			}
+			timer.add(nanos, bytes);
+		}
+	}
+
+	/**
+	 * Adds to a counter
+	 * @param counter  the name of the counter, like "ballots.transferred"
+	 * @param amount  the amount to add
+	 */
+	public static void count(String counter, long amount)
+	{
+		if (!enabled)
+			return;
+		LongAdder adder = counters.get(counter);
+		if (adder == null)
+		{
+			counters.putIfAbsent(counter, new LongAdder());
+			adder = counters.get(counter);
+		}
+		adder.add(amount);
+	}
+
+	/**
+	 * Records a batch of ballots being moved, as a Flight Recorder event and in
+	 * the ballots.transferred and ballots.exhausted counters
+	 * @param fromId  the candidate the ballots came from, or TabulationListener.FIRST_COUNT
+	 * @param ballots  the number of ballots (or groups) moved
+	 * @param exhausted  how many of them went to no one
+	 */
+	public static void transferred(int fromId, int ballots, int exhausted)
+	{
+		if (TRANSFER_TYPE.isEnabled())
+		{
+			TransferEvent event = new TransferEvent();
+			if (event.shouldCommit())
+			{
+				event.fromId = fromId;
+				event.ballots = ballots;
+				event.exhausted = exhausted;
+				event.commit();
+			}
+		}
+		count("ballots.transferred", ballots);
+		count("ballots.exhausted", exhausted);
+	}
+
+	/**
+	 * @param phase  the name of a phase
+	 * @return  the number of times it was timed
+	 */
+	public static long getCount(String phase)
+	{
+		Timer timer = timers.get(phase);
+		return (timer == null) ? 0 : timer.count;
+	}
+
+	/**
+	 * @param phase  the name of a phase
+	 * @return  the total time spent in it, in nanoseconds
+	 */
+	public static long getNanos(String phase)
+	{
+		Timer timer = timers.get(phase);
+		return (timer == null) ? 0 : timer.nanos;
+	}
+
+	/**
+	 * @param counter  the name of a counter
+	 * @return  its total
+	 */
+	public static long getCounter(String counter)
+	{
+		LongAdder adder = counters.get(counter);
+		return (adder == null) ? 0 : adder.sum();
+	}
+
+	/**
+	 * Prints every phase (with how many times it ran, its total and longest
+	 * time, and the memory it allocated) and every counter
+	 * @param out  where to print
+	 */
+	public static void printSummary(PrintStream out)
+	{
+		out.println("\nMetrics:\n");
+		out.println(String.format("%-28s %8s %12s %12s %14s", "Phase", "times", "total ms", "longest ms",
+				"MB allocated"));
+		ArrayList<String> names = new ArrayList<String>(timers.keySet());
+		Collections.sort(names);
+		for (String name : names)
+		{
+			Timer timer = timers.get(name);
+			synchronized (timer)
+			{
+				out.println(String.format("%-28s %8d %12.3f %12.3f %14.3f", name, timer.count, timer.nanos / 1e6,
+						timer.longest / 1e6, timer.bytes / (1024.0 * 1024.0)));
+			}
+		}
+		names = new ArrayList<String>(counters.keySet());
+		Collections.sort(names);
+		for (String name : names)
+			out.println(String.format("%-28s %8d", name, counters.get(name).sum()));
+	}
+
+	/**
+	 * A phase being timed
+	 */
+	public static class Sample
+	{
+		private final String phase;
+		private final PhaseEvent event;
+		private final long startNanos;
+		private final long startBytes;
+
+		private Sample(String phase, PhaseEvent event)
+		{
+			this.phase = phase;
+			this.event = event;
+			startBytes = threads.getCurrentThreadAllocatedBytes();
+			event.begin();
+			startNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The totals for one phase
+	 */
+	private static class Timer
+	{
+		private long count;
+		private long nanos;
+		private long longest;
+		private long bytes;
+
+		synchronized void add(long nanos, long bytes)
+		{
+			count++;
+			this.nanos += nanos;
+			longest = Math.max(longest, nanos);
+			this.bytes += bytes;
+		}
+	}
+
+	@Name("beta.Phase")
+	@Label("Phase")
+	@Category("CRLS RCV")
+	@Description("A phase of reading or counting ballots")
+	@StackTrace(false)
+	static class PhaseEvent extends Event
+	{
+		@Label("Phase")
+		String phase;
+
+		@Label("Bytes Allocated")
+		long bytesAllocated;
+	}
+
+	@Name("beta.Transfer")
+	@Label("Ballot Transfer")
+	@Category("CRLS RCV")
+	@Description("A batch of ballots moved to their next continuing candidates")
+	@StackTrace(false)
+	static class TransferEvent extends Event
+	{
+		@Label("From Candidate")
+		int fromId;
+
+		@Label("Ballots")
+		int ballots;
+
+		@Label("Exhausted")
+		int exhausted;
+	}
+}
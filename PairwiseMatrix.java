@@ -0,0 +1,284 @@
+package beta;
+
+import java.io.PrintStream;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A PairwiseMatrix holds the head-to-head results of an election: for every two
+ * candidates, how many voters ranked one above the other. A candidate a voter
+ * ranked is counted as above every candidate they left off, and a voter who
+ * left both off is not counted for that pair.
+ *
+ * The matrix is made in one pass over the ballots. For each ballot only the
+ * pairs of candidates it ranks are counted (in ahead), along with how many
+ * ballots rank each candidate at all (in ranked); the voters preferring a to b
+ * are then ranked[a] - ahead[b][a]. The ballots are split across the threads of
+ * a fork-join pool, each part filling its own int arrays, which are added up
+ * at the end. Since a part's arrays hold a count for every pair of candidates,
+ * a part has at least as many ballots as there are pairs (and at least
+ * BALLOTS_PER_TASK), so the arrays made never add up to more than an int or
+ * two for each ballot.
+ *
+ * The Condorcet winner is the candidate who beats every other one head to
+ * head, if there is one. The Smith set is the smallest group of candidates who
+ * each beat everyone outside it; it is just the Condorcet winner when there is
+ * one.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class PairwiseMatrix
+{
+	final static int BALLOTS_PER_TASK = 4096;
+	final static int MAX_TABLE_CANDIDATES = 20; // the table is too wide to read past this
+
+	private CandidateDictionary dictionary;
+	private int candidates;
+	private int[] ahead; // ahead[a * candidates + b]: ballots ranking both, a above b
+	private int[] ranked; // ranked[a]: ballots ranking a
+
+	/**
+	 * Counts the ballots on the common fork-join pool
+	 * @param ballots  the ballots to count
+	 */
+	public PairwiseMatrix(BallotStore ballots)
+	{
+		this(ballots, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param ballots  the ballots to count
+	 * @param pool  the pool the ballots are counted on
+	 */
+	public PairwiseMatrix(BallotStore ballots, ForkJoinPool pool)
+	{
+		dictionary = ballots.getDictionary();
+		candidates = dictionary.size();
+		long partSize = Math.max(BALLOTS_PER_TASK, (long) candidates * candidates);
+		Counts counts = pool.invoke(new Part(ballots, 0, ballots.size(), (int) Math.min(partSize, Integer.MAX_VALUE)));
+		ahead = counts.ahead;
+		ranked = counts.ranked;
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	/**
+	 * @param a  a candidate
+	 * @param b  another candidate
+	 * @return  the number of voters who ranked a above b
+	 */
+	public int getPreferred(int a, int b)
+	{
+		if (a == b)
+			return 0;
+		return ranked[a] - ahead[b * candidates + a];
+	}
+
+	/**
+	 * @return  the voters preferring a to b less the voters preferring b to a
+	 */
+	public int getMargin(int a, int b)
+	{
+		return getPreferred(a, b) - getPreferred(b, a);
+	}
+
+	/**
+	 * @return  true if more voters prefer a to b than b to a
+	 */
+	public boolean beats(int a, int b)
+	{
+		return getMargin(a, b) > 0;
+	}
+
+	/**
+	 * @return  the id of the candidate who beats every other, or -1 if there isn't one
+	 */
+	public int getCondorcetWinner()
+	{
+		for (int a = 0; a < candidates; a++)
+		{
+			boolean beatsAll = true;
+			for (int b = 0; b < candidates && beatsAll; b++)
+			{
+				if (a != b && !beats(a, b))
+					beatsAll = false;
+			}
+			if (beatsAll)
+				return a;
+		}
+		return -1;
+	}
+
+	/**
+	 * The Smith set is the candidates who can reach every other candidate by a
+	 * chain of head-to-head results they didn't lose
+	 * @return  the ids in the Smith set
+	 */
+	public BitSet getSmithSet()
+	{
+		boolean[][] reaches = new boolean[candidates][candidates];
+		for (int a = 0; a < candidates; a++)
+		{
+			for (int b = 0; b < candidates; b++)
+				reaches[a][b] = (a == b) || getMargin(a, b) >= 0;
+		}
+		for (int via = 0; via < candidates; via++)
+		{
+			for (int a = 0; a < candidates; a++)
+			{
+				if (!reaches[a][via])
+					continue;
+				for (int b = 0; b < candidates; b++)
+				{
+					if (reaches[via][b])
+						reaches[a][b] = true;
+				}
+			}
+		}
+		BitSet smith = new BitSet(candidates);
+		for (int a = 0; a < candidates; a++)
+		{
+			boolean reachesAll = true;
+			for (int b = 0; b < candidates && reachesAll; b++)
+				reachesAll = reaches[a][b];
+			if (reachesAll)
+				smith.set(a);
+		}
+		return smith;
+	}
+
+	/**
+	 * Prints the head-to-head table (for up to MAX_TABLE_CANDIDATES candidates)
+	 * and the Condorcet winner or the Smith set
+	 * @param out  where to print
+	 */
+	public void printSummary(PrintStream out)
+	{
+		out.println("\nHead-to-head results:\n");
+		if (candidates <= MAX_TABLE_CANDIDATES)
+		{
+			int longestName = 0;
+			for (int id = 0; id < candidates; id++)
+				longestName = Math.max(longestName, dictionary.nameOf(id).length());
+			int width = 1 + Math.max(Integer.toString(candidates).length(),
+					Integer.toString(Math.max(1, max(ranked))).length());
+			StringBuilder line = new StringBuilder();
+			line.append(String.format("%" + (longestName + 4) + "s", ""));
+			for (int b = 0; b < candidates; b++)
+				line.append(String.format("%" + width + "d", b + 1));
+			out.println(line);
+			for (int a = 0; a < candidates; a++)
+			{
+				line.setLength(0);
+				line.append(String.format("%2d %-" + longestName + "s ", a + 1, dictionary.nameOf(a)));
+				for (int b = 0; b < candidates; b++)
+					line.append(String.format("%" + width + "s", (a == b) ? "-" : Integer.toString(getPreferred(a, b))));
+				out.println(line);
+			}
+			out.println("(each row is the number of voters who ranked that candidate above the column's)\n");
+		}
+		int winner = getCondorcetWinner();
+		if (winner >= 0)
+		{
+			out.println("Condorcet winner: " + dictionary.nameOf(winner) + " (beats every other candidate head to head)");
+			return;
+		}
+		BitSet smith = getSmithSet();
+		StringBuilder names = new StringBuilder();
+		for (int id = smith.nextSetBit(0); id >= 0; id = smith.nextSetBit(id + 1))
+		{
+			if (names.length() > 0)
+				names.append(", ");
+			names.append(dictionary.nameOf(id));
+		}
+		out.println("There is no Condorcet winner. Smith set: " + names);
+	}
+
+	private static int max(int[] values)
+	{
+		int max = 0;
+		for (int value : values)
+			max = Math.max(max, value);
+		return max;
+	}
+
+	/**
+	 * The counts for some of the ballots
+	 */
+	private static class Counts
+	{
+		private int[] ahead;
+		private int[] ranked;
+
+		Counts(int candidates)
+		{
+			ahead = new int[candidates * candidates];
+			ranked = new int[candidates];
+		}
+
+		void addAll(Counts other)
+		{
+			for (int i = 0; i < ahead.length; i++)
+				ahead[i] += other.ahead[i];
+			for (int i = 0; i < ranked.length; i++)
+				ranked[i] += other.ranked[i];
+		}
+	}
+
+	/**
+	 * The ballots from first up to (not including) end, split in half until
+	 * there are few enough to count on one thread
+	 */
+	private static class Part extends RecursiveTask<Counts>
+	{
+		private final static long serialVersionUID = 1L;
+
+		private final BallotStore ballots;
+		private final int first;
+		private final int end;
+		private final int partSize; // the most ballots to count without splitting
+
+		Part(BallotStore ballots, int first, int end, int partSize)
+		{
+			this.ballots = ballots;
+			this.first = first;
+			this.end = end;
+			this.partSize = partSize;
+		}
+
+		protected Counts compute()
+		{
+			if (end - first > partSize)
+			{
+				int middle = (first + end) >>> 1;
+				Part left = new Part(ballots, first, middle, partSize);
+				left.fork();
+				Counts totals = new Part(ballots, middle, end, partSize).compute();
+				totals.addAll(left.join());
+				return totals;
+			}
+			int candidates = ballots.getDictionary().size();
+			Counts totals = new Counts(candidates);
+			int[] ranking = new int[candidates];
+			for (int ballot = first; ballot < end; ballot++)
+			{
+				int count = ballots.getCount(ballot);
+				int length = ballots.getLength(ballot);
+				for (int rank = 0; rank < length; rank++)
+				{
+					int id = ballots.getRank(ballot, rank);
+					ranking[rank] = id;
+					totals.ranked[id] += count;
+					for (int above = 0; above < rank; above++)
+						totals.ahead[ranking[above] * candidates + id] += count;
+				}
+			}
+			return totals;
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package beta;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class reads the same Google form csv file as GoogleFormReader, but for
+ * very large files. The file is memory-mapped and the rows after the header are
+ * split into chunks that start and end on a line break. The chunks are parsed in
+ * parallel on a fork-join pool, each into its own list of ballots (or ballot
+ * groups), and the lists are merged in file order, so the result is the same as
+ * reading the file from top to bottom.
+ *
+ * Rankings are parsed straight from the bytes of the file; only the header, and
+ * the timestamps when individual ballots are asked for, are turned into Strings.
+ * Blank lines are skipped and invalid rows are reported and skipped, as in
+ * GoogleFormReader, so both readers give the same ballots and threshold.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ParallelFormReader
+{
+	final static int MIN_CHUNK_SIZE = 1 << 20; // 1 MB
+	final static int CHUNKS_PER_THREAD = 4;
+
+	private String filename;
+	private ForkJoinPool pool;
+	private CandidateDictionary dictionary;
+
+	/**
+	 * @param filename  name of the csv file, including the extension
+	 */
+	public ParallelFormReader(String filename)
+	{
+		this(filename, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param filename  name of the csv file, including the extension
+	 * @param pool  the pool the chunks are parsed on
+	 */
+	public ParallelFormReader(String filename, ForkJoinPool pool)
+	{
+		this.filename = filename;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return  the candidates named in the header, in column order (after a read)
+	 */
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	/**
+	 * Reads the file making one Ballot for each row
+	 * @return  the list of ballots
+	 */
+	public ArrayList<Ballot> readBallots()
+	{
+		ArrayList<Ballot> ballots = new ArrayList<Ballot>();
+		for (Chunk chunk : read(false))
+			ballots.addAll(chunk.ballots);
+		return ballots;
+	}
+
+	/**
+	 * Reads the file collapsing identical rankings into groups
+	 * @return  the list of ballot groups
+	 */
+	public ArrayList<Ballot> readBallotGroups()
+	{
+		ArrayList<Chunk> chunks = read(true);
+		if (dictionary == null)
+			return new ArrayList<Ballot>();
+		BallotGrouper grouper = new BallotGrouper(dictionary);
+		for (Chunk chunk : chunks)
+			grouper.addAll(chunk.grouper);
+		return grouper.getGroups();
+	}
+
+	private ArrayList<Chunk> read(boolean group)
+	{
+		Metrics.Sample sample = Metrics.start("ingest.parse");
+		ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+		try (RandomAccessFile file = new RandomAccessFile(filename, "r"))
+		{
+			FileChannel channel = file.getChannel();
+			long fileSize = channel.size();
+
+			MappedByteBuffer start = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(fileSize, Integer.MAX_VALUE));
+			int headerEnd = endOfLine(start, 0, start.limit());
+			byte[] header = new byte[headerEnd];
+			start.get(0, header);
+			dictionary = new CandidateDictionary(
+					GoogleCSVConverter.getCandidateList(new String(header, StandardCharsets.UTF_8)));
+			long dataStart = Math.min(fileSize, (long) headerEnd + 1);
+
+			// split the rows into chunks, each mapped on its own so files over 2 GB work
+			long chunkSize = Math.max(MIN_CHUNK_SIZE,
+					(fileSize - dataStart) / (pool.getParallelism() * CHUNKS_PER_THREAD) + 1);
+			chunkSize = Math.min(chunkSize, Integer.MAX_VALUE / 2);
+			for (long from = dataStart; from < fileSize; from += chunkSize)
+			{
+				// after the first chunk, map from one byte early to see if a row starts right at from
+				int offset = (from == dataStart) ? 0 : 1;
+				long mapSize = Math.min(fileSize - from + offset, Integer.MAX_VALUE);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from - offset, mapSize);
+				chunks.add(new Chunk(buffer, offset, (int) Math.min(chunkSize + offset, mapSize), group));
+			}
+			for (Chunk chunk : chunks)
+				pool.execute(chunk);
+			for (Chunk chunk : chunks)
+				chunk.join();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		Metrics.stop(sample);
+		return chunks;
+	}
+
+	/**
+	 * Finds the end of the line starting at from. A line break inside a quoted
+	 * field does not end the line.
+	 * @return  the index of the '\n' (or limit if there is none)
+	 */
+	private static int endOfLine(MappedByteBuffer buffer, int from, int limit)
+	{
+		boolean quoted = false;
+		for (int i = from; i < limit; i++)
+		{
+			byte b = buffer.get(i);
+			if (b == '"')
+				quoted = !quoted;
+			else if (b == '\n' && !quoted)
+				return i;
+		}
+		return limit;
+	}
+
+	/**
+	 * The rows of one part of the file. A chunk owns every row that starts
+	 * between offset and end; the row running over the end is finished from the
+	 * rest of the mapping, and a partial row at the start belongs to the chunk
+	 * before. Rows (other than the header) are not expected to have line breaks
+	 * inside quotes, since they hold a timestamp and numbers.
+	 */
+	private class Chunk extends RecursiveTask<Chunk>
+	{
+		private final static long serialVersionUID = 1L;
+
+		private final MappedByteBuffer buffer;
+		private final int offset; // 1 if the mapping starts at the last byte of the chunk before
+		private final int end;
+		private final boolean group;
+		private BallotGrouper grouper;
+		private ArrayList<Ballot> ballots;
+
+		Chunk(MappedByteBuffer buffer, int offset, int end, boolean group)
+		{
+			this.buffer = buffer;
+			this.offset = offset;
+			this.end = end;
+			this.group = group;
+		}
+
+		protected Chunk compute()
+		{
+			if (group)
+				grouper = new BallotGrouper(dictionary);
+			else
+				ballots = new ArrayList<Ballot>();
+			int limit = buffer.limit();
+			int pos = 0;
+			if (offset == 1)
+			{
+				// skip the end of a row that started in the chunk before
+				while (pos < limit && buffer.get(pos) != '\n')
+					pos++;
+				pos++;
+			}
+			short[] slots = new short[dictionary.size()];
+			while (pos < end && pos < limit)
+			{
+				int rowEnd = endOfLine(buffer, pos, limit);
+				parseRow(pos, rowEnd, slots);
+				pos = rowEnd + 1;
+			}
+			return this;
+		}
+
+		private void parseRow(int from, int end, short[] slots)
+		{
+			int lineEnd = end;
+			if (lineEnd > from && buffer.get(lineEnd - 1) == '\r')
+				lineEnd--;
+			if (lineEnd == from)
+				return; // blank line
+			Arrays.fill(slots, (short) -1);
+			int pos = from;
+			int timestampEnd = skipField(pos, lineEnd);
+			boolean valid = true;
+			pos = timestampEnd + 1;
+			for (int id = 0; id < slots.length && pos <= lineEnd && valid; id++)
+			{
+				int fieldEnd = skipField(pos, lineEnd);
+				int rank = parseRank(pos, fieldEnd);
+				if (rank == -1)
+					valid = false;
+				else if (rank > 0)
+				{
+					if (rank > slots.length || slots[rank - 1] != -1)
+						valid = false;
+					else
+						slots[rank - 1] = (short) id;
+				}
+				pos = fieldEnd + 1;
+			}
+			if (!valid)
+			{
+				System.out.println("This ballot is considered invalid: " + text(from, lineEnd));
+				return;
+			}
+			short[] ranking = GoogleFormReader.closeUpSlots(slots);
+			if (group)
+				grouper.add(ranking, 1);
+			else
+				ballots.add(new Ballot(unquote(text(from, timestampEnd)), ranking, 1, dictionary));
+		}
+
+		/**
+		 * @return  the index of the comma (or line end) after the field starting at from
+		 */
+		private int skipField(int from, int lineEnd)
+		{
+			boolean quoted = false;
+			int pos = from;
+			while (pos < lineEnd)
+			{
+				byte b = buffer.get(pos);
+				if (b == '"')
+					quoted = !quoted;
+				else if (b == ',' && !quoted)
+					return pos;
+				pos++;
+			}
+			return lineEnd;
+		}
+
+		/**
+		 * @return  the rank in the field, 0 if it is blank, or -1 if it is not a number
+		 */
+		private int parseRank(int from, int to)
+		{
+			int rank = 0;
+			boolean digits = false;
+			for (int pos = from; pos < to; pos++)
+			{
+				byte b = buffer.get(pos);
+				if (b >= '0' && b <= '9')
+				{
+					rank = rank * 10 + (b - '0');
+					digits = true;
+					if (rank > Short.MAX_VALUE)
+						return -1;
+				}
+				else if (b != ' ' && b != '"')
+					return -1;
+			}
+			if (digits && rank == 0)
+				return -1;
+			return rank;
+		}
+
+		private String text(int from, int to)
+		{
+			byte[] bytes = new byte[to - from];
+			buffer.get(from, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static String unquote(String field)
+	{
+		if (field.length() >= 2 && field.charAt(0) == '"' && field.charAt(field.length() - 1) == '"')
+			return field.substring(1, field.length() - 1).replace("\"\"", "\"");
+		return field;
+	}
+}
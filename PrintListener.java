@@ -0,0 +1,29 @@
+package beta;
+
+import java.io.PrintStream;
+
+/**
+ * A TextListener that prints to a PrintStream, like System.out
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class PrintListener extends TextListener
+{
+	private PrintStream out;
+
+	/**
+	 * @param out  where to print
+	 * @param ballotDetail  true to print a line for every ballot moved
+	 */
+	public PrintListener(PrintStream out, boolean ballotDetail)
+	{
+		super(ballotDetail);
+		this.out = out;
+	}
+
+	protected void println(String line)
+	{
+		out.println(line);
+	}
+}
@@ -0,0 +1,133 @@
+package beta;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * A Race is one election to count in a batch (see BatchRunner): the file
+ * holding its ballots, the number of seats, and how to count it.
+ *
+ * Races are listed in a manifest, a csv file with a header line and then one
+ * line per race:
+ *
+ *   race,file,seats,transfer,seed
+ *   Class president,president.csv,1,,
+ *   Student council,council.csv,5,fractional,
+ *   Council recount,council.rcvb,5,whole,1234
+ *
+ * The file can be a Google form csv file, a ballot summary (.summary) or a
+ * snapshot (.rcvb); a relative path is taken from the manifest's folder, not
+ * the folder the program is run in. transfer is "whole" (the default) or
+ * "fractional", and an empty seed means a new seed is picked. Blank lines and
+ * lines starting with # are skipped. Each race needs its own name, since the
+ * name is used for its report file; a race with the same name as an earlier
+ * one is reported and skipped.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class Race
+{
+	private String name;
+	private String filename;
+	private int seats;
+	private Tabulator.TransferMode transferMode;
+	private long seed; // 0 picks a new seed
+
+	/**
+	 * @param name  the name of the race, used for its report file
+	 * @param filename  the file holding the ballots
+	 * @param seats  the number of seats to fill
+	 * @param transferMode  how a winner's surplus is transferred
+	 * @param seed  the seed for picking surplus ballots, or 0 to pick a new one
+	 */
+	public Race(String name, String filename, int seats, Tabulator.TransferMode transferMode, long seed)
+	{
+		this.name = name;
+		this.filename = filename;
+		this.seats = seats;
+		this.transferMode = transferMode;
+		this.seed = seed;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getFilename()
+	{
+		return filename;
+	}
+
+	public int getSeats()
+	{
+		return seats;
+	}
+
+	public Tabulator.TransferMode getTransferMode()
+	{
+		return transferMode;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Reads a manifest of races. Lines that can't be read, and races named the
+	 * same as an earlier race, are reported and skipped.
+	 * @param filename  the manifest file
+	 * @return  the races, in the order they are listed
+	 * @throws IOException  if the manifest can't be read
+	 */
+	public static ArrayList<Race> readManifest(String filename) throws IOException
+	{
+		ArrayList<Race> races = new ArrayList<Race>();
+		HashSet<String> names = new HashSet<String>();
+		Path folder = Paths.get(filename).toAbsolutePath().getParent();
+		FileReader file = new FileReader(filename);
+		CsvCursor cursor = new CsvCursor(file);
+		cursor.nextRecord(); // the header
+		while (cursor.nextRecord())
+		{
+			String line = cursor.recordAsString();
+			if (line.trim().isEmpty() || line.startsWith("#"))
+				continue;
+			try
+			{
+				cursor.nextField();
+				String name = cursor.fieldAsString().trim();
+				cursor.nextField();
+				String raceFile = cursor.fieldAsString().trim();
+				cursor.nextField();
+				int seats = cursor.fieldAsInt();
+				Tabulator.TransferMode transferMode = Tabulator.TransferMode.WHOLE_BALLOTS;
+				if (cursor.nextField() && cursor.fieldAsString().trim().equalsIgnoreCase("fractional"))
+					transferMode = Tabulator.TransferMode.FRACTIONAL;
+				long seed = 0;
+				if (cursor.nextField() && !cursor.fieldAsString().trim().isEmpty())
+					seed = Long.parseLong(cursor.fieldAsString().trim());
+				if (name.isEmpty() || raceFile.isEmpty() || seats < 1)
+					throw new IllegalArgumentException();
+				if (!names.add(name))
+				{
+					System.out.println("This race has the same name as an earlier race: " + line);
+					continue;
+				}
+				races.add(new Race(name, folder.resolve(raceFile).toString(), seats, transferMode, seed));
+			}
+			catch (Exception e)
+			{
+				System.out.println("This race is considered invalid: " + line);
+			}
+		}
+		file.close();
+		return races;
+	}
+}
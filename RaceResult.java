@@ -0,0 +1,56 @@
+package beta;
+
+/**
+ * The result of counting one race in a batch: the report, or the reason the
+ * race could not be counted
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class RaceResult
+{
+	private Race race;
+	private ResultsReport report;
+	private String error;
+	private long milliseconds;
+
+	/**
+	 * @param race  the race
+	 * @param report  its results, or null if it could not be counted
+	 * @param error  why it could not be counted, or null
+	 * @param milliseconds  how long reading and counting took
+	 */
+	public RaceResult(Race race, ResultsReport report, String error, long milliseconds)
+	{
+		this.race = race;
+		this.report = report;
+		this.error = error;
+		this.milliseconds = milliseconds;
+	}
+
+	public Race getRace()
+	{
+		return race;
+	}
+
+	/**
+	 * @return  the results, or null if the race could not be counted
+	 */
+	public ResultsReport getReport()
+	{
+		return report;
+	}
+
+	/**
+	 * @return  why the race could not be counted, or null if it was
+	 */
+	public String getError()
+	{
+		return error;
+	}
+
+	public long getMilliseconds()
+	{
+		return milliseconds;
+	}
+}
@@ -0,0 +1,79 @@
+package beta;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ReportRenderer writes a ResultsReport in one format. Renderers write
+ * everything to the Writer they are given and never flush or close it, so one
+ * buffered writer can take the whole report in a single pass.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public interface ReportRenderer
+{
+	/**
+	 * Writes the report
+	 * @param report  the results to write
+	 * @param out  where to write them
+	 * @throws IOException  if out can't be written
+	 */
+	void render(ResultsReport report, Writer out) throws IOException;
+
+	/**
+	 * @return  the usual file extension for the format, without the dot
+	 */
+	String getExtension();
+
+	/**
+	 * Writes a report to a file (in UTF-8)
+	 * @param report  the results to write
+	 * @param renderer  the format to write them in
+	 * @param filename  the file to write
+	 * @throws IOException  if the file can't be written
+	 */
+	static void write(ResultsReport report, ReportRenderer renderer, String filename) throws IOException
+	{
+		Metrics.Sample sample = Metrics.start("report.write");
+		Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8), 1 << 16);
+		try
+		{
+			renderer.render(report, out);
+		}
+		finally
+		{
+			out.close();
+		}
+		Metrics.stop(sample);
+	}
+
+	/**
+	 * Prints a report, to the console for example. The stream is flushed but
+	 * left open.
+	 * @param report  the results to print
+	 * @param renderer  the format to print them in
+	 * @param out  where to print them
+	 */
+	static void print(ResultsReport report, ReportRenderer renderer, PrintStream out)
+	{
+		Metrics.Sample sample = Metrics.start("report.print");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out), 1 << 16);
+		try
+		{
+			renderer.render(report, writer);
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		Metrics.stop(sample);
+	}
+}
@@ -0,0 +1,120 @@
+package beta;
+
+import java.util.SplittableRandom;
+
+/**
+ * A ResampledStore is a bootstrap sample of another BallotStore: the same
+ * number of voters drawn at random, with replacement, from the voters of the
+ * original. Rankings are read from the original store; only the new count of
+ * each ballot (or group) is kept, and ballots that were not drawn are left out.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ResampledStore implements BallotStore
+{
+	private BallotStore original;
+	private int[] ballots; // numbers of the original ballots drawn at least once
+	private int[] counts; // how many times each of them was drawn
+
+	/**
+	 * Draws a sample
+	 * @param original  the ballots to draw from
+	 * @param endOfBallot  running total of the original counts at the end of each
+	 *                     ballot (see runningTotals), shared by every sample
+	 * @param random  the source of random numbers
+	 */
+	public ResampledStore(BallotStore original, long[] endOfBallot, SplittableRandom random)
+	{
+		this.original = original;
+		int size = original.size();
+		long voters = (size == 0) ? 0 : endOfBallot[size - 1];
+		int[] drawn = new int[size];
+		for (long v = 0; v < voters; v++)
+			drawn[ballotOf(random.nextLong(voters), endOfBallot)]++;
+
+		int kept = 0;
+		for (int b = 0; b < size; b++)
+		{
+			if (drawn[b] > 0)
+				kept++;
+		}
+		ballots = new int[kept];
+		counts = new int[kept];
+		int i = 0;
+		for (int b = 0; b < size; b++)
+		{
+			if (drawn[b] > 0)
+			{
+				ballots[i] = b;
+				counts[i] = drawn[b];
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * @param store  a store
+	 * @return  the running total of the counts at the end of each ballot
+	 */
+	public static long[] runningTotals(BallotStore store)
+	{
+		long[] endOfBallot = new long[store.size()];
+		long total = 0;
+		for (int b = 0; b < endOfBallot.length; b++)
+		{
+			total += store.getCount(b);
+			endOfBallot[b] = total;
+		}
+		return endOfBallot;
+	}
+
+	/**
+	 * Binary search for the ballot holding a voter
+	 * @return  the number of the ballot
+	 */
+	private static int ballotOf(long voter, long[] endOfBallot)
+	{
+		int low = 0;
+		int high = endOfBallot.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (endOfBallot[mid] <= voter)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return original.getDictionary();
+	}
+
+	public int size()
+	{
+		return ballots.length;
+	}
+
+	public int getCount(int ballot)
+	{
+		return counts[ballot];
+	}
+
+	public int getLength(int ballot)
+	{
+		return original.getLength(ballots[ballot]);
+	}
+
+	public int getRank(int ballot, int rank)
+	{
+		return original.getRank(ballots[ballot], rank);
+	}
+
+	public String getLabel(int ballot)
+	{
+		return original.getLabel(ballots[ballot]);
+	}
+}
@@ -0,0 +1,173 @@
+package beta;
+
+import java.util.ArrayList;
+
+/**
+ * A ResultsReport holds the results of a count: the votes and state of every
+ * candidate after each round, the exhausted votes, and the winners in the order
+ * they were elected. The Tabulator adds a round to it each time it updates the
+ * report, and a ReportRenderer turns it into text, csv, json or html.
+ *
+ * Votes are kept as numbers (in fixed point, see BallotCursor.ONE) and are only
+ * formatted by the renderers. Rounds are numbered from 1. The rounds are kept
+ * in a RoundHistory, which can also say when each candidate was elected or
+ * eliminated and how many votes moved in each round.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ResultsReport
+{
+	private CandidateDictionary dictionary;
+	private int seats;
+	private int threshold;
+	private Tabulator.TransferMode transferMode;
+	private long seed;
+
+	private RoundHistory history;
+	private ArrayList<Integer> winners;
+
+	/**
+	 * An empty report, with no rounds
+	 * @param dictionary  the candidates
+	 * @param seats  the number of seats to fill
+	 * @param threshold  the number of votes needed to win
+	 * @param transferMode  how surplus votes were transferred
+	 * @param seed  the seed for picking surplus ballots
+	 */
+	public ResultsReport(CandidateDictionary dictionary, int seats, int threshold,
+			Tabulator.TransferMode transferMode, long seed)
+	{
+		this.dictionary = dictionary;
+		this.seats = seats;
+		this.threshold = threshold;
+		this.transferMode = transferMode;
+		this.seed = seed;
+		history = new RoundHistory(dictionary.size());
+		winners = new ArrayList<Integer>();
+	}
+
+	/**
+	 * Adds the results of a round
+	 * @param roundVotes  the votes of each candidate, by id
+	 * @param roundStates  the state of each candidate, by id
+	 * @param exhaustedVotes  the total votes exhausted so far
+	 */
+	public void addRound(long[] roundVotes, CandidateState[] roundStates, long exhaustedVotes)
+	{
+		history.addRound(roundVotes, roundStates, exhaustedVotes);
+	}
+
+	/**
+	 * Adds the next winner
+	 * @param id  the candidate elected
+	 */
+	public void addWinner(int id)
+	{
+		winners.add(id);
+	}
+
+	public CandidateDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	public int getCandidateCount()
+	{
+		return dictionary.size();
+	}
+
+	public String getName(int id)
+	{
+		return dictionary.nameOf(id);
+	}
+
+	public int getSeats()
+	{
+		return seats;
+	}
+
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	public Tabulator.TransferMode getTransferMode()
+	{
+		return transferMode;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @return  the votes and states of every round
+	 */
+	public RoundHistory getHistory()
+	{
+		return history;
+	}
+
+	public int getRoundCount()
+	{
+		return history.getRoundCount();
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @param round  the round, from 1
+	 * @return  the candidate's votes after the round, in fixed point
+	 */
+	public long getVotes(int id, int round)
+	{
+		return history.getVotes(id, round);
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @param round  the round, from 1
+	 * @return  the candidate's state after the round
+	 */
+	public CandidateState getState(int id, int round)
+	{
+		return history.getState(id, round);
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @return  the candidate's state at the end of the count
+	 */
+	public CandidateState getFinalState(int id)
+	{
+		if (history.getRoundCount() == 0)
+			return CandidateState.CONTINUING;
+		return getState(id, getRoundCount());
+	}
+
+	/**
+	 * @param round  the round, from 1
+	 * @return  the total votes exhausted after the round, in fixed point
+	 */
+	public long getExhausted(int round)
+	{
+		return history.getExhausted(round);
+	}
+
+	/**
+	 * @return  the ids of the winners, in the order they were elected
+	 */
+	public ArrayList<Integer> getWinners()
+	{
+		return new ArrayList<Integer>(winners);
+	}
+
+	/**
+	 * @return  true if every seat was filled
+	 */
+	public boolean isComplete()
+	{
+		return winners.size() >= seats;
+	}
+}
@@ -0,0 +1,179 @@
+package beta;
+
+/**
+ * A RoundHistory is the votes and state of every candidate after each round of
+ * a count, and the exhausted votes, kept in flat arrays of primitives (a row of
+ * candidates for each round) that double in size when they fill up. No String
+ * is made for a cell; the ReportRenderers format the numbers when a report is
+ * written.
+ *
+ * Besides a candidate's votes and state at any round, it can say in which
+ * round a candidate was elected or eliminated, and how many votes each
+ * candidate (or the exhausted pile) gained or lost in a round.
+ *
+ * Votes are in fixed point (see BallotCursor.ONE). Rounds are numbered from 1.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class RoundHistory
+{
+	private final static CandidateState[] STATES = CandidateState.values();
+
+	private int candidates;
+	private int rounds;
+	private long[] votes; // votes[(round - 1) * candidates + id]
+	private byte[] states; // the ordinal of each CandidateState, laid out like votes
+	private long[] exhausted; // exhausted votes, for each round
+
+	/**
+	 * An empty history, with no rounds
+	 * @param candidates  the number of candidates
+	 */
+	public RoundHistory(int candidates)
+	{
+		this.candidates = candidates;
+		votes = new long[8 * candidates];
+		states = new byte[8 * candidates];
+		exhausted = new long[8];
+	}
+
+	/**
+	 * Adds the results of a round. The arrays are copied.
+	 * @param roundVotes  the votes of each candidate, by id
+	 * @param roundStates  the state of each candidate, by id
+	 * @param exhaustedVotes  the total votes exhausted so far
+	 */
+	public void addRound(long[] roundVotes, CandidateState[] roundStates, long exhaustedVotes)
+	{
+		if (rounds == exhausted.length)
+		{
+			long[] biggerVotes = new long[2 * votes.length];
+			System.arraycopy(votes, 0, biggerVotes, 0, votes.length);
+			votes = biggerVotes;
+			byte[] biggerStates = new byte[2 * states.length];
+			System.arraycopy(states, 0, biggerStates, 0, states.length);
+			states = biggerStates;
+			long[] biggerExhausted = new long[2 * exhausted.length];
+			System.arraycopy(exhausted, 0, biggerExhausted, 0, exhausted.length);
+			exhausted = biggerExhausted;
+		}
+		int row = rounds * candidates;
+		System.arraycopy(roundVotes, 0, votes, row, candidates);
+		for (int id = 0; id < candidates; id++)
+			states[row + id] = (byte) roundStates[id].ordinal();
+		exhausted[rounds] = exhaustedVotes;
+		rounds++;
+	}
+
+	public int getCandidateCount()
+	{
+		return candidates;
+	}
+
+	public int getRoundCount()
+	{
+		return rounds;
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @param round  the round, from 1
+	 * @return  the candidate's votes after the round
+	 */
+	public long getVotes(int id, int round)
+	{
+		return votes[index(id, round)];
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @param round  the round, from 1
+	 * @return  the candidate's state after the round
+	 */
+	public CandidateState getState(int id, int round)
+	{
+		return STATES[states[index(id, round)]];
+	}
+
+	/**
+	 * @param round  the round, from 1
+	 * @return  the total votes exhausted after the round
+	 */
+	public long getExhausted(int round)
+	{
+		checkRound(round);
+		return exhausted[round - 1];
+	}
+
+	/**
+	 * The votes a candidate gained in a round (negative if they were lost, as
+	 * when a winner's surplus or an eliminated candidate's ballots move on).
+	 * In round 1 this is the first count.
+	 * @param id  the candidate
+	 * @param round  the round, from 1
+	 * @return  the change in the candidate's votes
+	 */
+	public long getTransfer(int id, int round)
+	{
+		long before = (round == 1) ? 0 : getVotes(id, round - 1);
+		return getVotes(id, round) - before;
+	}
+
+	/**
+	 * @param round  the round, from 1
+	 * @return  the votes that were exhausted in the round
+	 */
+	public long getExhaustedTransfer(int round)
+	{
+		long before = (round == 1) ? 0 : getExhausted(round - 1);
+		return getExhausted(round) - before;
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @return  the first round after which the candidate was elected, or 0 if
+	 * they weren't
+	 */
+	public int getRoundElected(int id)
+	{
+		return firstRoundIn(id, CandidateState.ELECTED);
+	}
+
+	/**
+	 * @param id  the candidate
+	 * @return  the first round after which the candidate was eliminated (or
+	 * withdrawn), or 0 if they weren't
+	 */
+	public int getRoundEliminated(int id)
+	{
+		return firstRoundIn(id, CandidateState.ELIMINATED);
+	}
+
+	private int firstRoundIn(int id, CandidateState state)
+	{
+		if (id < 0 || id >= candidates)
+			throw new IndexOutOfBoundsException("No candidate " + id);
+		byte ordinal = (byte) state.ordinal();
+		for (int round = 1; round <= rounds; round++)
+		{
+			if (states[(round - 1) * candidates + id] == ordinal)
+				return round;
+		}
+		return 0;
+	}
+
+	private int index(int id, int round)
+	{
+		checkRound(round);
+		if (id < 0 || id >= candidates)
+			throw new IndexOutOfBoundsException("No candidate " + id);
+		return (round - 1) * candidates + id;
+	}
+
+	private void checkRound(int round)
+	{
+		if (round < 1 || round > rounds)
+			throw new IndexOutOfBoundsException("No round " + round + " (there are " + rounds + ")");
+	}
+}
@@ -0,0 +1,90 @@
+package beta;
+
+import java.util.BitSet;
+
+/**
+ * A Scenario is one way of counting an election, to see what would have
+ * happened if things had been different (see ScenarioRunner): a different
+ * number of seats, a different way of transferring surplus votes, or some
+ * candidates withdrawing before the vote.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class Scenario
+{
+	private String name;
+	private int seats;
+	private Tabulator.TransferMode transferMode;
+	private long seed;
+	private BitSet withdrawn;
+
+	/**
+	 * @param name  a description of the scenario, for the summary
+	 * @param seats  the number of seats to fill
+	 * @param transferMode  how a winner's surplus is transferred
+	 * @param seed  the seed for picking surplus ballots
+	 */
+	public Scenario(String name, int seats, Tabulator.TransferMode transferMode, long seed)
+	{
+		this.name = name;
+		this.seats = seats;
+		this.transferMode = transferMode;
+		this.seed = seed;
+		withdrawn = new BitSet();
+	}
+
+	/**
+	 * Counts as if a candidate had withdrawn before the vote
+	 * @param id  the candidate
+	 * @return  this scenario
+	 */
+	public Scenario withdraw(int id)
+	{
+		withdrawn.set(id);
+		return this;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getSeats()
+	{
+		return seats;
+	}
+
+	public Tabulator.TransferMode getTransferMode()
+	{
+		return transferMode;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * @return  the ids of the candidates who withdrew (a copy)
+	 */
+	public BitSet getWithdrawn()
+	{
+		return (BitSet) withdrawn.clone();
+	}
+
+	/**
+	 * Counts the ballots this way. The store is only read, so any number of
+	 * scenarios can count the same store at once.
+	 * @param ballots  the ballots to count
+	 * @return  the results
+	 */
+	public ResultsReport count(BallotStore ballots)
+	{
+		Tabulator tallier = new Tabulator(ballots, seats, transferMode, seed);
+		for (int id = withdrawn.nextSetBit(0); id >= 0; id = withdrawn.nextSetBit(id + 1))
+			tallier.withdrawCandidate(id);
+		tallier.tabulate();
+		return tallier.getReport();
+	}
+}
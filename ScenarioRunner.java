@@ -0,0 +1,136 @@
+package beta;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A ScenarioRunner counts one election many different ways at the same time
+ * (see Scenario), to answer questions like "who would have won if this
+ * candidate had withdrawn?" or "what if there had been one more seat?".
+ *
+ * The ballots are read once into a BallotStore, which is never changed, and
+ * every scenario's Tabulator reads it through its own cursors, so the
+ * scenarios can be counted on as many threads as there are.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ScenarioRunner
+{
+	private BallotStore ballots;
+	private int threads;
+
+	/**
+	 * @param ballots  the ballots every scenario counts
+	 * @param threads  the number of scenarios counted at once
+	 */
+	public ScenarioRunner(BallotStore ballots, int threads)
+	{
+		this.ballots = ballots;
+		this.threads = threads;
+	}
+
+	/**
+	 * The usual questions about a count: the count itself, then one more and
+	 * one fewer seat, then each candidate withdrawing in turn
+	 * @param dictionary  the candidates
+	 * @param seats  the number of seats in the real count
+	 * @param transferMode  how a winner's surplus is transferred
+	 * @param seed  the seed for picking surplus ballots (the same for every scenario)
+	 * @return  the scenarios, the real count first
+	 */
+	public static ArrayList<Scenario> whatIfs(CandidateDictionary dictionary, int seats,
+			Tabulator.TransferMode transferMode, long seed)
+	{
+		ArrayList<Scenario> scenarios = new ArrayList<Scenario>();
+		scenarios.add(new Scenario("As counted", seats, transferMode, seed));
+		if (seats < dictionary.size())
+			scenarios.add(new Scenario((seats + 1) + " seats", seats + 1, transferMode, seed));
+		if (seats > 1)
+			scenarios.add(new Scenario((seats - 1) + ((seats - 1 == 1) ? " seat" : " seats"), seats - 1,
+					transferMode, seed));
+		for (int id = 0; id < dictionary.size(); id++)
+			scenarios.add(new Scenario("Without " + dictionary.nameOf(id), seats, transferMode, seed).withdraw(id));
+		return scenarios;
+	}
+
+	/**
+	 * Counts the scenarios
+	 * @param scenarios  the scenarios to count
+	 * @return  the results of each scenario, in the same order
+	 */
+	public ArrayList<ResultsReport> run(ArrayList<Scenario> scenarios)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<ResultsReport>> futures = new ArrayList<Future<ResultsReport>>();
+		for (final Scenario scenario : scenarios)
+		{
+			futures.add(executor.submit(new Callable<ResultsReport>()
+			{
+				public ResultsReport call()
+				{
+					return scenario.count(ballots);
+				}
+			}));
+		}
+		ArrayList<ResultsReport> results = new ArrayList<ResultsReport>();
+		try
+		{
+			for (Future<ResultsReport> future : futures)
+				results.add(future.get());
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		return results;
+	}
+
+	/**
+	 * Prints a line for each scenario with its winners, marking the ones whose
+	 * winners are different from the first scenario's
+	 * @param scenarios  the scenarios
+	 * @param results  their results, from run
+	 * @param out  where to print
+	 */
+	public static void printSummary(ArrayList<Scenario> scenarios, ArrayList<ResultsReport> results,
+			PrintStream out)
+	{
+		out.println("\nWhat if:\n");
+		int longestName = 0;
+		for (Scenario scenario : scenarios)
+			longestName = Math.max(longestName, scenario.getName().length());
+		ArrayList<Integer> counted = results.isEmpty() ? null : sorted(results.get(0).getWinners());
+		for (int i = 0; i < results.size(); i++)
+		{
+			ResultsReport report = results.get(i);
+			String winners = TextReportRenderer.winnerList(report);
+			boolean different = i > 0 && !sorted(report.getWinners()).equals(counted);
+			out.println(String.format("%s %-" + longestName + "s  %s%s", different ? "*" : " ",
+					scenarios.get(i).getName(), winners.isEmpty() ? "no winners" : winners,
+					report.isComplete() ? "" : " (not all seats filled)"));
+		}
+		out.println("(* different winners)");
+	}
+
+	private static ArrayList<Integer> sorted(ArrayList<Integer> ids)
+	{
+		ArrayList<Integer> copy = new ArrayList<Integer>(ids);
+		Collections.sort(copy);
+		return copy;
+	}
+}
@@ -0,0 +1,76 @@
+package beta;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * This is the main class for running the counts as a service on this computer,
+ * so that the ballots are read once and every count after that comes back in
+ * moments (see usage notes below, and TabulationService for the requests).
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ServiceMain
+{
+	/*
+	 * Usage notes:
+	 * 1. Set port below (the service only answers requests from this computer)
+	 * 2. To have some elections ready as soon as it starts, list them in preload
+	 *    below as id, ballot file pairs
+	 * 3. Run this file, then ask for results with a browser or curl, for example
+	 *      curl -X PUT "http://localhost:8080/elections/icecream?file=iceCreamTest.csv"
+	 *      curl -X PUT --data-binary @council.csv http://localhost:8080/elections/council
+	 *      curl "http://localhost:8080/elections/icecream/results?seats=3&seed=42"
+	 *      curl "http://localhost:8080/elections/icecream/rounds?seats=3&transfer=fractional"
+	 * 4. Type q and enter to stop
+	 */
+	public static void main(String[] args)
+	{
+		int port = 8080;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String[][] preload = { { "icecream", "iceCreamTest.csv" } };
+
+		TabulationService service;
+		try
+		{
+			service = new TabulationService(port, threads);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		for (String[] election : preload)
+		{
+			try
+			{
+				service.load(election[0], election[1]);
+				System.out.println("Loaded " + election[0] + " from " + election[1]);
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		service.start();
+		System.out.println("Counting service running at http://localhost:" + service.getPort() + "/elections");
+		System.out.println("Type q and enter to stop");
+
+		BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+		try
+		{
+			String line;
+			while ((line = console.readLine()) != null && !line.trim().equalsIgnoreCase("q"))
+			{
+				// keep running
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		service.stop();
+	}
+}
@@ -0,0 +1,285 @@
+package beta;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A StabilityAnalysis counts the same election many times to see how much the
+ * result depends on luck. Each run picks surplus ballots with a different seed,
+ * and can also count a bootstrap sample of the voters (see ResampledStore) to
+ * see how much it depends on who happened to vote. The analysis reports how
+ * often each candidate won and how often each set of winners came up.
+ *
+ * The runs share one read-only BallotStore and are split across the threads
+ * of a fork-join pool. Each run is a Tabulator with no listeners, so nothing is
+ * parsed or written per run. Run i always uses the same seeds for a given
+ * starting seed, so an analysis can be repeated exactly.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class StabilityAnalysis
+{
+	final static int RUNS_PER_TASK = 16;
+
+	private BallotStore ballots;
+	private int seats;
+	private Tabulator.TransferMode transferMode;
+	private boolean bootstrap;
+	private ForkJoinPool pool;
+	private long[] endOfBallot; // for drawing bootstrap samples
+
+	private int runs;
+	private long seed;
+	private Results results;
+
+	/**
+	 * @param ballots  the ballots to count
+	 * @param seats  the number of seats to fill
+	 * @param transferMode  how a winner's surplus is transferred
+	 */
+	public StabilityAnalysis(BallotStore ballots, int seats, Tabulator.TransferMode transferMode)
+	{
+		this.ballots = ballots;
+		this.seats = seats;
+		this.transferMode = transferMode;
+		pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * @param bootstrap  true to count a new sample of the voters in each run
+	 */
+	public void setBootstrap(boolean bootstrap)
+	{
+		this.bootstrap = bootstrap;
+	}
+
+	/**
+	 * @param pool  the pool the runs are done on (the common pool by default)
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Does the runs
+	 * @param runs  the number of counts
+	 * @param seed  the seed the seeds of the runs are made from
+	 */
+	public void run(int runs, long seed)
+	{
+		this.runs = runs;
+		this.seed = seed;
+		if (bootstrap && endOfBallot == null)
+			endOfBallot = ResampledStore.runningTotals(ballots);
+		results = pool.invoke(new Runs(0, runs));
+	}
+
+	public int getRuns()
+	{
+		return runs;
+	}
+
+	/**
+	 * @param id  a candidate
+	 * @return  the number of runs the candidate won
+	 */
+	public int getWinCount(int id)
+	{
+		return results.wins[id];
+	}
+
+	/**
+	 * @param id  a candidate
+	 * @return  the fraction of runs the candidate won
+	 */
+	public double getWinFrequency(int id)
+	{
+		return (runs == 0) ? 0 : (double) results.wins[id] / runs;
+	}
+
+	/**
+	 * @return  the number of runs that did not fill every seat
+	 */
+	public int getIncompleteRuns()
+	{
+		return results.incomplete;
+	}
+
+	/**
+	 * @return  each set of winners that came up (as a set of ids) and the number
+	 *          of runs it came up in, most common first
+	 */
+	public ArrayList<BitSet> getOutcomes()
+	{
+		ArrayList<BitSet> outcomes = new ArrayList<BitSet>(results.outcomes.keySet());
+		Collections.sort(outcomes, new Comparator<BitSet>()
+		{
+			public int compare(BitSet a, BitSet b)
+			{
+				return getOutcomeCount(b) - getOutcomeCount(a);
+			}
+		});
+		return outcomes;
+	}
+
+	/**
+	 * @param winners  a set of winner ids
+	 * @return  the number of runs with exactly those winners
+	 */
+	public int getOutcomeCount(BitSet winners)
+	{
+		int[] count = results.outcomes.get(winners);
+		return (count == null) ? 0 : count[0];
+	}
+
+	/**
+	 * Prints how often each candidate won, most wins first, and the most common
+	 * sets of winners
+	 * @param out  where to print
+	 */
+	public void printSummary(PrintStream out)
+	{
+		CandidateDictionary dictionary = ballots.getDictionary();
+		out.println("\nStability over " + runs + " runs (surplus seeds varied"
+				+ (bootstrap ? ", voters resampled" : "") + ", seed = " + seed + ")\n");
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (int id = 0; id < dictionary.size(); id++)
+			ids.add(id);
+		Collections.sort(ids, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				return results.wins[b] - results.wins[a];
+			}
+		});
+		for (int id : ids)
+		{
+			out.println(String.format("%6.1f%%  %s", 100 * getWinFrequency(id), dictionary.nameOf(id)));
+		}
+		if (results.incomplete > 0)
+			out.println(results.incomplete + " runs did not fill every seat");
+
+		out.println("\nMost common winners:");
+		ArrayList<BitSet> outcomes = getOutcomes();
+		for (int i = 0; i < outcomes.size() && i < 10; i++)
+		{
+			StringBuilder names = new StringBuilder();
+			BitSet winners = outcomes.get(i);
+			for (int id = winners.nextSetBit(0); id >= 0; id = winners.nextSetBit(id + 1))
+			{
+				if (names.length() > 0)
+					names.append(", ");
+				names.append(dictionary.nameOf(id));
+			}
+			out.println(String.format("%6.1f%%  %s", 100.0 * getOutcomeCount(winners) / runs, names));
+		}
+	}
+
+	/**
+	 * Does one run
+	 * @param run  the number of the run
+	 * @return  the ids of the winners, in the order they were elected
+	 */
+	private ArrayList<Integer> count(int run)
+	{
+		// the same run number always gets the same random numbers
+		SplittableRandom random = new SplittableRandom(seed + run * 0x9E3779B97F4A7C15L);
+		BallotStore store = ballots;
+		if (bootstrap)
+			store = new ResampledStore(ballots, endOfBallot, random.split());
+		Tabulator tallier = new Tabulator(store, seats, transferMode, random.nextLong());
+		tallier.setPool(null); // the runs already keep every thread busy
+		tallier.tabulate();
+		return tallier.getReport().getWinners();
+	}
+
+	/**
+	 * The totals of some runs
+	 */
+	private static class Results
+	{
+		private int[] wins;
+		private HashMap<BitSet, int[]> outcomes = new HashMap<BitSet, int[]>();
+		private int incomplete;
+
+		Results(int candidates)
+		{
+			wins = new int[candidates];
+		}
+
+		void add(BitSet winners, int times)
+		{
+			int[] count = outcomes.get(winners);
+			if (count == null)
+			{
+				count = new int[1];
+				outcomes.put(winners, count);
+			}
+			count[0] += times;
+		}
+
+		void addAll(Results other)
+		{
+			for (int id = 0; id < wins.length; id++)
+				wins[id] += other.wins[id];
+			for (BitSet winners : other.outcomes.keySet())
+				add(winners, other.outcomes.get(winners)[0]);
+			incomplete += other.incomplete;
+		}
+	}
+
+	/**
+	 * The runs from first up to (not including) end, split in half until
+	 * there are few enough to do on one thread
+	 */
+	private class Runs extends RecursiveTask<Results>
+	{
+		private final static long serialVersionUID = 1L;
+
+		private final int first;
+		private final int end;
+
+		Runs(int first, int end)
+		{
+			this.first = first;
+			this.end = end;
+		}
+
+		protected Results compute()
+		{
+			if (end - first > RUNS_PER_TASK)
+			{
+				int middle = (first + end) >>> 1;
+				Runs left = new Runs(first, middle);
+				left.fork();
+				Results totals = new Runs(middle, end).compute();
+				totals.addAll(left.join());
+				return totals;
+			}
+			Results totals = new Results(ballots.getDictionary().size());
+			for (int run = first; run < end; run++)
+			{
+				ArrayList<Integer> elected = count(run);
+				BitSet winners = new BitSet();
+				for (int id : elected)
+				{
+					totals.wins[id]++;
+					winners.set(id);
+				}
+				if (elected.size() < seats)
+					totals.incomplete++;
+				totals.add(winners, 1);
+			}
+			return totals;
+		}
+	}
+}
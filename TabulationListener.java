@@ -0,0 +1,104 @@
+package beta;
+
+/**
+ * A TabulationListener is told what happens during a count, so the Tabulator
+ * doesn't have to print anything itself. Every method does nothing unless it is
+ * overridden, and NO_OP listens to nothing.
+ *
+ * Votes are in fixed point (BallotCursor.ONE is one whole vote); use
+ * Tabulator.formatVotes to show them. Candidates are ids; use the dictionary
+ * given to tabulationStarted for their names.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public interface TabulationListener
+{
+	/**
+	 * A listener that ignores every event
+	 */
+	TabulationListener NO_OP = new TabulationListener()
+	{
+	};
+
+	/**
+	 * Called once, before the first round
+	 * @param dictionary  the candidates
+	 * @param seats  the number of seats to fill
+	 * @param threshold  the number of votes needed to win
+	 */
+	default void tabulationStarted(CandidateDictionary dictionary, int seats, int threshold)
+	{
+	}
+
+	/**
+	 * @param round  the round number (the first count is round 1)
+	 */
+	default void roundStarted(int round)
+	{
+	}
+
+	/**
+	 * @param id  the candidate elected
+	 * @param votes  the candidate's votes when elected
+	 */
+	default void candidateElected(int id, long votes)
+	{
+	}
+
+	/**
+	 * @param id  the candidate eliminated
+	 * @param votes  the candidate's votes when eliminated
+	 */
+	default void candidateEliminated(int id, long votes)
+	{
+	}
+
+	/**
+	 * Called after a batch of ballots has been moved
+	 * @param fromId  the candidate the ballots came from, or FIRST_COUNT for the first count
+	 * @param ballotCount  the number of ballots moved
+	 * @param votesReceived  the votes each candidate (by id) received from the batch
+	 * @param votesExhausted  the votes from the batch that went to no one
+	 */
+	default void ballotsTransferred(int fromId, int ballotCount, long[] votesReceived, long votesExhausted)
+	{
+	}
+
+	/**
+	 * Called for every ballot moved, only if wantsBallotDetail returns true
+	 * @param ballot  the ballot, already moved (its toString shows it)
+	 * @param toId  the candidate it went to, or BallotCursor.EXHAUSTED
+	 */
+	default void ballotMoved(String ballot, int toId)
+	{
+	}
+
+	/**
+	 * @param round  the round number
+	 * @param exhaustedVotes  the total votes exhausted so far
+	 */
+	default void roundFinished(int round, long exhaustedVotes)
+	{
+	}
+
+	/**
+	 * Called when the Tabulator has finished (see Tabulator.finish)
+	 */
+	default void tabulationFinished()
+	{
+	}
+
+	/**
+	 * @return  true to be sent every ballot moved, which is slow for large elections
+	 */
+	default boolean wantsBallotDetail()
+	{
+		return false;
+	}
+
+	/**
+	 * The fromId of ballotsTransferred for the first count of the ballots
+	 */
+	int FIRST_COUNT = -1;
+}
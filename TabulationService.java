@@ -0,0 +1,475 @@
+package beta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A TabulationService counts elections over http, from a program that keeps
+ * running, so the ballots are read only once and later counts come back from
+ * a JVM that is already warmed up. Each election is loaded under an id, from a
+ * ballot file on this computer or from a csv file sent with the request, and
+ * stays in memory until it is replaced or deleted. Results of counts that give
+ * the same result every time (a fixed seed, or fractional transfers) are kept
+ * with the election (up to MAX_CACHED_RESULTS of them), so asking again costs
+ * nothing, and they go when the election is replaced or deleted.
+ *
+ * Requests (all answers are json):
+ *   GET    /elections                 the elections loaded
+ *   PUT    /elections/{id}?file=path  load a ballot file (csv, .summary or .rcvb)
+ *   PUT    /elections/{id}            load the Google form csv file in the request body
+ *   GET    /elections/{id}            the candidates and number of ballots
+ *   DELETE /elections/{id}            forget the election
+ *   GET    /elections/{id}/results    count and return the report (see JsonReportRenderer)
+ *   GET    /elections/{id}/rounds     count and return the round history
+ *
+ * results and rounds take seats (default 1), transfer (whole or fractional)
+ * and seed (0 or none picks a new seed) parameters, for example
+ * /elections/council/results?seats=5&transfer=fractional
+ *
+ * Ballot files are read through a BallotCache, so two elections loaded from
+ * the same file share one copy of the ballots. A file that has changed is read
+ * again when it is loaded, and a file is dropped from the cache once no
+ * election is loaded from it, so its ballots can be freed.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class TabulationService
+{
+	private final static String PREFIX = "/elections";
+	final static int MAX_CACHED_RESULTS = 64; // for each election
+
+	private HttpServer server;
+	private ExecutorService threads;
+	private BallotCache files;
+	private ConcurrentHashMap<String, Election> elections;
+
+	/**
+	 * The ballots loaded under an id, and the results of counting them. A new
+	 * Election replaces the whole thing, so results of the old ballots can never
+	 * be given for the new ones.
+	 */
+	private static class Election
+	{
+		final BallotStore ballots;
+		final String path; // the canonical path of the file in the BallotCache, or null if uploaded
+		final ConcurrentHashMap<String, ResultsReport> results; // by seats, transfer mode and seed
+
+		Election(BallotStore ballots, String path)
+		{
+			this.ballots = ballots;
+			this.path = path;
+			results = new ConcurrentHashMap<String, ResultsReport>();
+		}
+	}
+
+	/**
+	 * A service that listens on the local machine only
+	 * @param port  the port to listen on, or 0 for any free port
+	 * @param threadCount  the number of requests to handle at once
+	 * @throws IOException  if the port can't be opened
+	 */
+	public TabulationService(int port, int threadCount) throws IOException
+	{
+		files = new BallotCache();
+		elections = new ConcurrentHashMap<String, Election>();
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		threads = Executors.newFixedThreadPool(threadCount);
+		server.setExecutor(threads);
+		server.createContext(PREFIX, new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					route(exchange);
+				}
+				catch (IllegalArgumentException e)
+				{
+					sendError(exchange, 400, e.getMessage());
+				}
+				catch (IOException e)
+				{
+					sendError(exchange, 400, e.getMessage()); // a ballot file that can't be read
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+					sendError(exchange, 500, e.toString());
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * Stops answering requests, letting any being answered finish
+	 */
+	public void stop()
+	{
+		server.stop(1);
+		threads.shutdown();
+	}
+
+	/**
+	 * @return  the port the service is listening on
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Loads an election from a ballot file, replacing any with the same id
+	 * @param id  the election's id
+	 * @param filename  the file (a Google form csv file, a .summary or a .rcvb)
+	 * @return  the ballots
+	 * @throws IOException  if the file can't be read or has no candidates or ballots
+	 */
+	public BallotStore load(String id, String filename) throws IOException
+	{
+		checkId(id);
+		BallotStore ballots = files.get(filename);
+		try
+		{
+			checkBallots(filename, ballots);
+		}
+		catch (IOException e)
+		{
+			files.remove(filename); // so it is read again once it is fixed
+			throw e;
+		}
+		return put(id, ballots, new File(filename).getCanonicalPath());
+	}
+
+	/**
+	 * Loads an election from a Google form csv file, replacing any with the same id
+	 * @param id  the election's id
+	 * @param csv  the contents of the csv file
+	 * @return  the ballots
+	 * @throws IOException  if it can't be read or has no candidates or ballots
+	 */
+	public BallotStore upload(String id, InputStream csv) throws IOException
+	{
+		checkId(id);
+		File copy = File.createTempFile("rcv-upload", ".csv");
+		try
+		{
+			Files.copy(csv, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			BallotStore ballots = files.get(copy.getPath());
+			files.remove(copy.getPath()); // the ballots are kept under the id instead
+			checkBallots("The file sent", ballots);
+			return put(id, ballots, null);
+		}
+		finally
+		{
+			copy.delete();
+		}
+	}
+
+	/**
+	 * Forgets an election
+	 * @param id  the election's id
+	 * @return  true if there was one
+	 */
+	public boolean remove(String id)
+	{
+		Election removed = elections.remove(id);
+		release(removed);
+		return removed != null;
+	}
+
+	/**
+	 * Counts an election. The result is kept with the election if counting
+	 * again would give the same result, unless MAX_CACHED_RESULTS are kept already.
+	 * @param id  the election's id
+	 * @param seats  the number of seats to fill
+	 * @param transferMode  how surplus votes are transferred
+	 * @param seed  the seed for picking surplus ballots, or 0 to pick a new one
+	 * @return  the results, or null if there is no such election
+	 */
+	public ResultsReport count(String id, int seats, Tabulator.TransferMode transferMode, long seed)
+	{
+		Election election = elections.get(id);
+		if (election == null)
+			return null;
+		boolean repeatable = seed != 0 || transferMode == Tabulator.TransferMode.FRACTIONAL;
+		if (transferMode == Tabulator.TransferMode.FRACTIONAL)
+			seed = 0; // not used
+		String key = seats + "/" + transferMode + "/" + seed;
+		if (repeatable)
+		{
+			ResultsReport report = election.results.get(key);
+			if (report != null)
+				return report;
+		}
+		Tabulator tallier = new Tabulator(election.ballots, seats, transferMode,
+				(seed == 0) ? new SplittableRandom().nextLong() : seed);
+		tallier.tabulate();
+		ResultsReport report = tallier.getReport();
+		if (repeatable && election.results.size() < MAX_CACHED_RESULTS)
+			election.results.put(key, report);
+		return report;
+	}
+
+	/**
+	 * Makes sure a ballot file held an election, so a mistake can't replace one
+	 * @param source  where the ballots came from, for the message
+	 * @param ballots  the ballots read
+	 * @throws IOException  if there are no candidates or no ballots
+	 */
+	private static void checkBallots(String source, BallotStore ballots) throws IOException
+	{
+		if (ballots.getDictionary().size() == 0)
+			throw new IOException(source + " has no candidates");
+		if (ballots.size() == 0)
+			throw new IOException(source + " has no ballots");
+	}
+
+	private BallotStore put(String id, BallotStore ballots, String path)
+	{
+		release(elections.put(id, new Election(ballots, path)));
+		return ballots;
+	}
+
+	/**
+	 * Drops the file an election was loaded from out of the BallotCache, unless
+	 * another election is loaded from it too
+	 * @param election  an election that was replaced or deleted, or null
+	 */
+	private void release(Election election)
+	{
+		if (election == null || election.path == null)
+			return;
+		for (Election other : elections.values())
+		{
+			if (election.path.equals(other.path))
+				return;
+		}
+		try
+		{
+			files.remove(election.path);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private void route(HttpExchange exchange) throws IOException
+	{
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		if (!path.equals(PREFIX) && !path.startsWith(PREFIX + "/"))
+		{
+			sendError(exchange, 404, "Nothing at " + path);
+			return;
+		}
+		String[] parts = path.substring(PREFIX.length()).split("/");
+		// parts[0] is empty, parts[1] is the id and parts[2] what is asked for
+		if (parts.length <= 1)
+		{
+			if (!method.equals("GET"))
+				throw new IllegalArgumentException(method + " is not allowed on " + path);
+			sendJson(exchange, 200, listElections());
+			return;
+		}
+		if (parts.length > 3 || (parts.length == 3 && !parts[2].equals("results") && !parts[2].equals("rounds")))
+		{
+			sendError(exchange, 404, "Nothing at " + path);
+			return;
+		}
+		String id = parts[1];
+		HashMap<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+		if (parts.length == 2 && method.equals("PUT"))
+		{
+			BallotStore ballots;
+			if (query.containsKey("file"))
+				ballots = load(id, query.get("file"));
+			else
+				ballots = upload(id, exchange.getRequestBody());
+			sendJson(exchange, 201, describe(id, ballots));
+			return;
+		}
+		if (parts.length == 2 && method.equals("DELETE"))
+		{
+			if (remove(id))
+				sendJson(exchange, 200, "{\"deleted\": " + JsonReportRenderer.quote(id) + "}\n");
+			else
+				sendError(exchange, 404, "No election " + id);
+			return;
+		}
+		if (!method.equals("GET"))
+			throw new IllegalArgumentException(method + " is not allowed on " + path);
+
+		Election election = elections.get(id);
+		if (election == null)
+		{
+			sendError(exchange, 404, "No election " + id);
+			return;
+		}
+		BallotStore ballots = election.ballots;
+		if (parts.length == 2)
+		{
+			sendJson(exchange, 200, describe(id, ballots));
+			return;
+		}
+
+		long seatCount = getNumber(query, "seats", 1);
+		if (seatCount < 1 || seatCount > ballots.getDictionary().size())
+			throw new IllegalArgumentException("seats must be from 1 to the number of candidates");
+		int seats = (int) seatCount;
+		Tabulator.TransferMode transferMode = Tabulator.TransferMode.WHOLE_BALLOTS;
+		String transfer = getOrDefault(query, "transfer", "whole");
+		if (transfer.equalsIgnoreCase("fractional"))
+			transferMode = Tabulator.TransferMode.FRACTIONAL;
+		else if (!transfer.equalsIgnoreCase("whole"))
+			throw new IllegalArgumentException("transfer must be whole or fractional");
+		long seed = getNumber(query, "seed", 0);
+
+		ResultsReport report = count(id, seats, transferMode, seed);
+		if (report == null)
+		{
+			sendError(exchange, 404, "No election " + id);
+			return;
+		}
+		StringWriter json = new StringWriter();
+		if (parts[2].equals("results"))
+			new JsonReportRenderer().render(report, json);
+		else
+			JsonReportRenderer.renderRounds(report, json);
+		sendJson(exchange, 200, json.toString());
+	}
+
+	private String listElections()
+	{
+		ArrayList<String> ids = new ArrayList<String>(elections.keySet());
+		Collections.sort(ids);
+		StringBuilder json = new StringBuilder("{\"elections\": [");
+		boolean first = true;
+		for (int i = 0; i < ids.size(); i++)
+		{
+			Election election = elections.get(ids.get(i));
+			if (election == null)
+				continue; // deleted since
+			BallotStore ballots = election.ballots;
+			json.append(first ? "\n  " : ",\n  ");
+			first = false;
+			json.append("{\"id\": ").append(JsonReportRenderer.quote(ids.get(i)));
+			json.append(", \"ballots\": ").append(ballotCount(ballots));
+			json.append(", \"candidates\": ").append(ballots.getDictionary().size()).append('}');
+		}
+		return json.append("]}\n").toString();
+	}
+
+	private static String describe(String id, BallotStore ballots)
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"id\": ").append(JsonReportRenderer.quote(id));
+		json.append(", \"ballots\": ").append(ballotCount(ballots));
+		json.append(", \"candidates\": [");
+		CandidateDictionary dictionary = ballots.getDictionary();
+		for (int c = 0; c < dictionary.size(); c++)
+		{
+			if (c > 0)
+				json.append(", ");
+			json.append(JsonReportRenderer.quote(dictionary.nameOf(c)));
+		}
+		return json.append("]}\n").toString();
+	}
+
+	private static long ballotCount(BallotStore ballots)
+	{
+		long count = 0;
+		for (int b = 0; b < ballots.size(); b++)
+			count += ballots.getCount(b);
+		return count;
+	}
+
+	private static HashMap<String, String> parseQuery(String rawQuery)
+	{
+		HashMap<String, String> query = new HashMap<String, String>();
+		if (rawQuery == null)
+			return query;
+		for (String pair : rawQuery.split("&"))
+		{
+			if (pair.isEmpty())
+				continue;
+			int equals = pair.indexOf('=');
+			String name = (equals < 0) ? pair : pair.substring(0, equals);
+			String value = (equals < 0) ? "" : pair.substring(equals + 1);
+			query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+
+	private static String getOrDefault(HashMap<String, String> query, String name, String otherwise)
+	{
+		String value = query.get(name);
+		return (value == null || value.isEmpty()) ? otherwise : value;
+	}
+
+	private static long getNumber(HashMap<String, String> query, String name, long otherwise)
+	{
+		String value = query.get(name);
+		if (value == null || value.isEmpty())
+			return otherwise;
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(name + " must be a whole number, not " + value);
+		}
+	}
+
+	private static void checkId(String id)
+	{
+		if (id == null || !id.matches("[A-Za-z0-9_.-]+"))
+			throw new IllegalArgumentException("An election id may only have letters, digits, _ . and -");
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		sendJson(exchange, status, "{\"error\": " + JsonReportRenderer.quote(String.valueOf(message)) + "}\n");
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
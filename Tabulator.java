@@ -1,162 +1,338 @@
 package beta;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class provides the tools for doing ranked choice voting
- * Given: a list of candidates, a list of ballots (containing only names on the list of
+ * Given: a store of ballots (containing only ids from the store's dictionary of
  * candidates), and the number of seats to fill
- * Three lists of candidate stacks are maintained: elected candidates (winners),
- * candidate out of the running (eliminated), and active ballots (stacks)
- * We assert after each public method that the ballots in the stacks only contain names
- * of active candidates
+ * All tabulation is done with candidate ids; names are only looked up for output
+ * Each candidate's state (continuing, elected or eliminated) and votes are
+ * kept in a CandidateRegistry, indexed by id, and the winners are also kept in
+ * a list in the order they were elected
+ * The ballots are kept in BallotStacks, a stack for each candidate: on the heap
+ * by default, or outside it (see setOffHeap) for very large elections. The
+ * stacks only hold the ballots; every rule of the count is here.
+ * The ballots are never changed. The ids of the continuing candidates are kept
+ * in a set (continuing) and each ballot has a cursor that skips any other
+ * candidate when the ballot is moved, so only the ballots being moved are
+ * looked at.
+ * Surplus votes of a winner are moved one of two ways (see TransferMode): whole
+ * ballots picked at random, or a fraction of every ballot in the winner's stack.
+ * Votes are counted in fixed point (BallotCursor.ONE is one whole vote) so both
+ * ways share the same arithmetic.
+ * What happens during the count (rounds, winners, eliminations, transfers) is
+ * reported to TabulationListeners; with none added nothing is printed until
+ * printReport.
+ * The results of each round are kept in a ResultsReport, which can be written
+ * in any format with a ReportRenderer.
+ * tabulate runs the whole count. It eliminates every low candidate at once
+ * when together they can't catch the next candidate up or lift anyone to the
+ * threshold, which gives the same winners as eliminating them one at a time.
+ * It also elects the continuing candidates once there are no more of them
+ * than seats left (see setFinishEarly) instead of eliminating until someone
+ * reaches the threshold, which could leave seats empty.
+ * When candidates are tied for fewest votes, the one with the lowest id (the
+ * first in the form's header) is eliminated. The first version of this class
+ * eliminated the one whose name appeared first in the ballots instead.
+ * A large batch of ballots (the first count, or a big elimination) is moved on
+ * the threads of a fork-join pool: each thread moves its share of the ballots
+ * to their next continuing candidate and adds up its own totals, one per
+ * candidate, and then the ballots are added to the stacks in the same order
+ * they were in, so the stacks are exactly as if the ballots had been placed
+ * one at a time.
  * 
  * @author dmcglathery
  *
  */
 public class Tabulator
 {
-	final static int CELL_WIDTH = 8;
-	
-	private static PrintStream outputFile;
+	final static int PARALLEL_BALLOTS = 16384; // smaller batches are placed on one thread
+	final static int PARTS_PER_THREAD = 4;
 
-	private ArrayList<String>[] reportRows;
+	/**
+	 * How a winner's surplus is transferred
+	 * WHOLE_BALLOTS moves surplus ballots picked at random (depends on the seed)
+	 * FRACTIONAL moves every ballot at the fraction surplus / votes (the weighted
+	 * inclusive Gregory method), which gives the same result on every run
+	 */
+	public enum TransferMode
+	{
+		WHOLE_BALLOTS, FRACTIONAL
+	}
 
-	private ArrayList<CandidateStack> stacks; // stacks for active candidates
-	private ArrayList<CandidateStack> winners;
-	private ArrayList<CandidateStack> eliminated;
-	private CandidateStack exhausted; // ballots that can't be moved to an active candidate
-	private ArrayList<Ballot> ballots;
+	private ResultsReport report;
+
+	private CandidateRegistry candidates;
+	private ArrayList<Integer> winners; // ids, in the order they were elected
+	private BallotStacks stacks; // a stack for each candidate, and the exhausted ballots last
+	private long exhaustedVotes; // votes in the exhausted stack
+	private BallotStore ballots;
+	private CandidateDictionary dictionary;
+	private BitSet continuing; // ids of the continuing candidates (the registry's set)
+	private long seed; // seed for picking surplus ballots, printed in the report
+	private SplittableRandom random;
 
 	private int threshold;
+	private long thresholdVotes; // threshold in fixed point
+	private TransferMode transferMode;
 	private int seats;
-	private int longestName;
+	private boolean bulkElimination = true;
+	private boolean finishEarly = true;
+	private ForkJoinPool pool = ForkJoinPool.commonPool(); // null to place every batch on one thread
+
+	private ArrayList<TabulationListener> listeners;
+	private int round; // the round being counted (the column of the report)
 
 	/**
 	 * A Tabulator object performs all the operations needed to model ranked choice voting
-	 * @param candList  The list of candidates on the ballots
-	 * @param ballots  The ballots cast in the election
+	 * @param dictionary  The candidates on the ballots
+	 * @param ballots  The ballots cast in the election (single ballots or groups of identical ballots)
+	 * @param seats  The number of seats to fill
+	 */
+	public Tabulator(CandidateDictionary dictionary, ArrayList<Ballot> ballots, int seats)
+	{
+		this(dictionary, ballots, seats, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * A Tabulator that picks surplus ballots with a given random seed, so a count
+	 * can be repeated exactly
+	 * @param dictionary  The candidates on the ballots
+	 * @param ballots  The ballots cast in the election (single ballots or groups of identical ballots)
+	 * @param seats  The number of seats to fill
+	 * @param seed  The seed for picking surplus ballots
+	 */
+	public Tabulator(CandidateDictionary dictionary, ArrayList<Ballot> ballots, int seats, long seed)
+	{
+		this(dictionary, ballots, seats, TransferMode.WHOLE_BALLOTS, seed);
+	}
+
+	/**
+	 * A Tabulator with a choice of how surplus votes are transferred
+	 * @param dictionary  The candidates on the ballots
+	 * @param ballots  The ballots cast in the election (single ballots or groups of identical ballots)
 	 * @param seats  The number of seats to fill
+	 * @param transferMode  How a winner's surplus is transferred
+	 * @param seed  The seed for picking surplus ballots (only used for WHOLE_BALLOTS)
 	 */
-	public Tabulator(ArrayList<String> candList, ArrayList<Ballot> ballots, int seats)
+	public Tabulator(CandidateDictionary dictionary, ArrayList<Ballot> ballots, int seats,
+			TransferMode transferMode, long seed)
 	{
-		stacks = new ArrayList<CandidateStack>();
-		for (int i = 0; i < candList.size(); i++)
-			stacks.add(new CandidateStack(candList.get(i)));
+		this(new BallotList(dictionary, ballots), seats, transferMode, seed);
+	}
 
-		winners = new ArrayList<CandidateStack>();
-		eliminated = new ArrayList<CandidateStack>();
+	/**
+	 * A Tabulator that counts the ballots in a BallotStore (which it never changes)
+	 * @param ballots  The ballots cast in the election (single ballots or groups of identical ballots)
+	 * @param seats  The number of seats to fill
+	 * @param transferMode  How a winner's surplus is transferred
+	 * @param seed  The seed for picking surplus ballots (only used for WHOLE_BALLOTS)
+	 */
+	public Tabulator(BallotStore ballots, int seats, TransferMode transferMode, long seed)
+	{
+		CandidateDictionary dictionary = ballots.getDictionary();
+		this.transferMode = transferMode;
+		this.seed = seed;
+		random = new SplittableRandom(seed);
+		this.dictionary = dictionary;
+		candidates = new CandidateRegistry(dictionary);
+		continuing = candidates.getContinuing();
+		winners = new ArrayList<Integer>();
 
-		exhausted = new CandidateStack("Exhausted");
 		this.ballots = ballots;
+		stacks = new HeapBallotStacks(ballots);
 
 		this.seats = seats;
-		threshold = ballots.size() / (seats + 1) + 1;
+		listeners = new ArrayList<TabulationListener>();
+		long ballotCount = 0;
+		for (int b = 0; b < ballots.size(); b++)
+			ballotCount += ballots.getCount(b);
+		threshold = (int) (ballotCount / (seats + 1) + 1);
+		thresholdVotes = threshold * BallotCursor.ONE;
+
+		report = new ResultsReport(dictionary, seats, threshold, transferMode, seed);
+	}
 
-		initializeReport(candList);
-		
-		File outfile = new File("voting report" + ".txt"); 
-		try
-		{
-			outputFile = new PrintStream(outfile);
-		}
-		catch (FileNotFoundException e)
-		{
-			e.printStackTrace();
-		}
+	/**
+	 * Adds a listener to be told about the count as it happens
+	 * @param listener  the listener
+	 */
+	public void addListener(TabulationListener listener)
+	{
+		listeners.add(listener);
 	}
 
-	public void makeInitialBallotStacks()
+	/**
+	 * @param bulkElimination  true (the default) to eliminate all the candidates
+	 *                         that can't catch up in one round (see eliminateLastCandidates)
+	 */
+	public void setBulkElimination(boolean bulkElimination)
 	{
-		distributeBallots(ballots);
-		updateReport();
+		this.bulkElimination = bulkElimination;
 	}
 
 	/**
-	 * Candidates with no ballots, and thus none to be transfered to other
-	 * candidates, are deleted from the stacks list
-	 * This method is called one time, after the initial distribution of ballots
-	 * and distributing of surplus ballots from potential winners in the first round.
-	 * 
-	 * Post condition: all remaining in the stack list have some active ballots
+	 * @param finishEarly  true (the default) to elect the continuing candidates
+	 *                     as soon as there are no more of them than seats left
 	 */
-	public void eliminateAllWithNoBallots()
+	public void setFinishEarly(boolean finishEarly)
+	{
+		this.finishEarly = finishEarly;
+	}
+
+	/**
+	 * @param pool  the pool large batches of ballots are placed on (the common
+	 *              pool by default), or null to place every ballot on this thread
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * @param offHeap  true to keep the ballot cursors outside the Java heap (see
+	 *                 DirectBallotStacks), false (the default) to keep them on it
+	 */
+	public void setOffHeap(boolean offHeap)
 	{
-		int i = 0;
-		while (i < stacks.size())
+		if (round > 0)
+			throw new IllegalStateException("The stacks can only be changed before the count starts");
+		stacks = offHeap ? new DirectBallotStacks(ballots) : new HeapBallotStacks(ballots);
+	}
+
+	/**
+	 * Counts as if a candidate had withdrawn before the vote: they are left out
+	 * from the first count on, and a ballot ranking them counts for the next
+	 * candidate it ranks. The threshold is not changed.
+	 * @param id  the candidate who withdrew
+	 */
+	public void withdrawCandidate(int id)
+	{
+		if (round > 0)
+			throw new IllegalStateException("A candidate can only be withdrawn before the count starts");
+		candidates.setState(id, CandidateState.ELIMINATED);
+	}
+
+	/**
+	 * Runs the whole count:
+	 * 1. Make stacks of ballots according to the first rank on each ballot
+	 * 2. Declare as a winner anyone who is already over the threshold and
+	 *    distribute their surplus ballots
+	 * 3. If there are any seats left and there are candidates with no first
+	 *    choice ballots, then those candidates are eliminated
+	 * 4. As long as there are seats to fill
+	 *    a. if there are new winners, distribute their surplus ballots
+	 *    b. if there are no more continuing candidates than seats left, elect them all
+	 *    c. otherwise, eliminate the lowest candidate(s) and distribute their ballots
+	 * The listeners are told the count is finished at the end.
+	 */
+	public void tabulate()
+	{
+		makeInitialBallotStacks();
+		if (anyNewWinners())
+		{
+			declareWinners();
+		}
+
+		if (numberOfWinners() < seats && emptyStacksExist())
+			eliminateAllWithNoBallots();
+
+		while (numberOfWinners() < seats && numberOfActiveCandidiates() > 0)
 		{
-			if (stacks.get(i).isEmpty())
+			if (anyNewWinners())
+			{
+				declareWinners();
+			}
+			else if (finishEarly && numberOfActiveCandidiates() <= seats - numberOfWinners())
 			{
-				deleteCandidate(stacks.get(i).getName());
+				electAllContinuing();
+			}
+			else if (bulkElimination)
+			{
+				eliminateLastCandidates();
 			}
 			else
 			{
-				i++;
+				eliminateLastCandidate();
 			}
 		}
+		finish();
+	}
+
+	public void makeInitialBallotStacks()
+	{
+		Metrics.Sample sample = Metrics.start("tabulate.firstCount");
+		for (TabulationListener l : listeners)
+			l.tabulationStarted(dictionary, seats, threshold);
+		startRound();
+		stacks.takeFirstCount();
+		distributeBallots(TabulationListener.FIRST_COUNT);
 		updateReport();
+		Metrics.stop(sample);
 	}
 
 	/**
-	 * Finds the appropriate stack to put the ballot in according to the highest
-	 * ranking name. If ballot is empty it is moved to the exhausted list.
-	 * Precondition: all candidates on the ballot being moved are active
-	 * 
-	 * @param b  ballot to be placed
+	 * Tells the listeners the count is over, so they can finish their output
 	 */
-	private void putInStack(Ballot b)
+	public void finish()
 	{
-		System.out.println("Moving ballot: " + b);
-		outputFile.println("Moving ballot: " + b);
-		if (b.isEmpty())
-			exhausted.addBallot(b);
-		else
-		{
-			String topName = b.getRank(0);
-			stacks.get(getStack(topName)).addBallot(b);
-		}
+		for (TabulationListener l : listeners)
+			l.tabulationFinished();
+	}
+
+	private void startRound()
+	{
+		round++;
+		for (TabulationListener l : listeners)
+			l.roundStarted(round);
 	}
 
 	/**
-	 * Returns the index of the candidates stack in the list of stacks
-	 * @param name  name of the candidiate
-	 * @return  index of the stack in the stacks list
+	 * Candidates with no ballots, and thus none to be transfered to other
+	 * candidates, are eliminated
+	 * This method is called one time, after the initial distribution of ballots
+	 * and distributing of surplus ballots from potential winners in the first round.
+	 * 
+	 * Post condition: all continuing candidates have some active ballots
 	 */
-	private int getStack(String name)
+	public void eliminateAllWithNoBallots()
 	{
-		int i = 0;
-		while (!stacks.get(i).getName().equals(name))
-			i++;
-		return i;
+		Metrics.Sample sample = Metrics.start("tabulate.eliminateEmpty");
+		startRound();
+		for (int id = continuing.nextSetBit(0); id >= 0; id = continuing.nextSetBit(id + 1))
+		{
+			if (stacks.isEmpty(id))
+			{
+				deleteCandidate(id);
+			}
+		}
+		updateReport();
+		Metrics.stop(sample);
 	}
 
 	/**
 	 * This method is called when a candidate is no longer an active candidate
-	 * The candidate's name is removed from all active ballots
+	 * The candidate is taken out of the continuing set, so ballots skip them
 	 * 
-	 * @param name  candidate's name being eliminated
+	 * @param id  id of the candidate being eliminated
 	 */
-	public void deleteCandidate(String name)
+	public void deleteCandidate(int id)
 	{
-		// go through all active ballots and remove candidate
 		// redistribute ballots for this candidate
-		removeNameFromActiveBallots(name);
-		ArrayList<Ballot> toDistribute = stacks.get(getStack(name)).removeAllBallots();
-		System.out.println(name + " is eliminated");
-		outputFile.println(name + " is eliminated");
-		distributeBallots(toDistribute);
-		eliminated.add(stacks.remove(getStack(name)));
-	}
-
-	private void removeNameFromActiveBallots(String name)
-	{
-		for (CandidateStack s : stacks)
-		{
-			s.removeName(name);
-		}
+		candidates.setState(id, CandidateState.ELIMINATED);
+		for (TabulationListener l : listeners)
+			l.candidateEliminated(id, candidates.getVotes(id));
+		stacks.takeAll(id);
+		distributeBallots(id);
 	}
 
 	public int numberOfWinners()
@@ -166,9 +342,9 @@ public class Tabulator
 
 	public boolean anyNewWinners()
 	{
-		for (CandidateStack s : stacks)
+		for (int id = continuing.nextSetBit(0); id >= 0; id = continuing.nextSetBit(id + 1))
 		{
-			if (s.getBallotCount() >= threshold)
+			if (candidates.getVotes(id) >= thresholdVotes)
 				return true;
 		}
 		return false;
@@ -176,27 +352,25 @@ public class Tabulator
 
 	public void declareWinners()
 	{
-		int i = 0;
-		while (i < stacks.size())
+		Metrics.Sample sample = Metrics.start("tabulate.declareWinners");
+		startRound();
+		for (int id = continuing.nextSetBit(0); id >= 0; id = continuing.nextSetBit(id + 1))
 		{
-			if (stacks.get(i).getBallotCount() >= threshold)
+			if (candidates.getVotes(id) >= thresholdVotes)
 			{
-				String name = stacks.get(i).getName();
-				System.out.println(name + " is elected");
-				outputFile.println(name + " is elected");
-				winners.add(stacks.remove(i));
+				for (TabulationListener l : listeners)
+					l.candidateElected(id, candidates.getVotes(id));
+				winners.add(id);
+				report.addWinner(id);
+				candidates.setState(id, CandidateState.ELECTED);
 				if (winners.size() < seats)
 				{
-					removeNameFromActiveBallots(name);
 					distributeWinnerSurplus();
 				}
 			}
-			else
-			{
-				i++;
-			}
 		}
 		updateReport();
+		Metrics.stop(sample);
 	}
 
 	/**
@@ -205,219 +379,401 @@ public class Tabulator
 	 */
 	public void distributeWinnerSurplus()
 	{
-		CandidateStack winner = winners.get(winners.size() - 1);
-		String name = winner.getName();
-		int totalVotes = winner.getBallotCount();
-		ArrayList<Ballot> surplusBallots = winner.removeBallots(totalVotes - threshold);
-		for (Ballot b : surplusBallots)
+		int winner = winners.get(winners.size() - 1);
+		long surplus = candidates.getVotes(winner) - thresholdVotes;
+		if (transferMode == TransferMode.FRACTIONAL)
+		{
+			stacks.takeFraction(winner, surplus, candidates.getVotes(winner));
+		}
+		else
 		{
-			b.removeName(name);
+			int[] movable = stacks.movableCounts(winner, continuing);
+			stacks.takeBallots(winner, pickBallots(movable, (int) (surplus / BallotCursor.ONE)));
 		}
-		distributeBallots(surplusBallots);
+		distributeBallots(winner);
 	}
 
 	/**
-	 * Distributes a given list of ballots to candidates on the active stacks list
-	 * 
-	 * @param toDistribute
-	 *            - list of ballots to distribute (ballots only contain names of
-	 *            active candidates)
+	 * Picks n ballots at random from a winner's stack. Only ballots that contain
+	 * votes for other continuing candidates are movable. This picks n ballots if
+	 * at least n are movable, otherwise it picks all the movable ballots.
+	 * Every single ballot is equally likely to be picked, so a group is split
+	 * when only some of its ballots are picked.
+	 * The movable ballots are numbered once and n of the numbers are drawn with
+	 * a partial Fisher-Yates shuffle, so the same random generator state always
+	 * picks the same ballots.
+	 * @param movable  the number of movable ballots in each cursor of the stack
+	 *                 (see BallotStacks.movableCounts)
+	 * @param n  the number of ballots to pick
+	 * @return  how many ballots to take from each cursor
 	 */
-	private void distributeBallots(ArrayList<Ballot> toDistribute)
+	private int[] pickBallots(int[] movable, int n)
 	{
-		System.out.println("\nDistributing ballots:");
-		outputFile.println("\nDistributing ballots:");
-		int count = 0;
-		for (Ballot b : toDistribute)
+		// movable groups and the running total of their ballots
+		int[] movableGroups = new int[movable.length];
+		int[] endOfGroup = new int[movable.length];
+		int groupCount = 0;
+		int movableCount = 0;
+		for (int g = 0; g < movable.length; g++)
 		{
-			putInStack(b);
-			count++;
+			if (movable[g] > 0)
+			{
+				movableCount += movable[g];
+				movableGroups[groupCount] = g;
+				endOfGroup[groupCount] = movableCount;
+				groupCount++;
+			}
 		}
-		System.out.println("\nA total of " + count + " ballots were distributed.");
-		outputFile.println("\nA total of " + count + " ballots were distributed.");
-	}
 
-	public void eliminateLastCandidate()
-	{
-		int minIndex = 0;
-		for (int i = 1; i < stacks.size(); i++)
+		if (n >= movableCount)
+			return movable;
+		int[] picked = new int[movable.length];
+		// partial Fisher-Yates over the ballot numbers 0..movableCount-1, only
+		// remembering the positions that have been swapped
+		HashMap<Integer, Integer> swapped = new HashMap<Integer, Integer>();
+		for (int i = 0; i < n; i++)
 		{
-			if (stacks.get(i).getBallotCount() < stacks.get(minIndex).getBallotCount())
-				minIndex = i;
+			int j = i + random.nextInt(movableCount - i);
+			Integer atJ = swapped.get(j);
+			Integer atI = swapped.get(i);
+			int ballotNumber = (atJ == null) ? j : atJ;
+			swapped.put(j, (atI == null) ? i : atI);
+			picked[movableGroups[groupOf(ballotNumber, endOfGroup, groupCount)]]++;
 		}
-		deleteCandidate(stacks.get(minIndex).getName());
-		updateReport();
+		return picked;
 	}
 
-	private void initializeReport(ArrayList<String> candList)
+	/**
+	 * Binary search for the movable group holding a ballot number
+	 * @param ballotNumber  number of the ballot among the movable ballots
+	 * @param endOfGroup  running total of ballots at the end of each movable group
+	 * @param groupCount  the number of movable groups
+	 * @return  index into the list of movable groups
+	 */
+	private static int groupOf(int ballotNumber, int[] endOfGroup, int groupCount)
 	{
-		reportRows = new ArrayList[candList.size() + 2];
-		longestName = 0;
-
-		int i = 1;
-		for (String name : candList)
+		int low = 0;
+		int high = groupCount - 1;
+		while (low < high)
 		{
-			reportRows[i] = new ArrayList<String>();
-			reportRows[i].add(name);
-			if (name.length() > longestName)
-				longestName = name.length();
-			i++;
+			int mid = (low + high) >>> 1;
+			if (endOfGroup[mid] <= ballotNumber)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		reportRows[i] = new ArrayList<String>();
-		reportRows[i].add(center("Exhausted", longestName));
-		reportRows[0] = new ArrayList<String>();
-		reportRows[0].add(center("Names", longestName));
+		return low;
 	}
 
-	public void printReport()
+	/**
+	 * The part of a ballot moved by a fractional surplus transfer (the Gregory
+	 * method): its value times surplus / total, rounded down
+	 * @param value  the ballot's value, in fixed point
+	 * @param surplus  the winner's surplus, in fixed point
+	 * @param total  the winner's votes, in fixed point
+	 * @return  the transfer value, in fixed point
+	 */
+	static long transferValue(long value, long surplus, long total)
 	{
-		System.out.println("\nFinal results:\n");
-		outputFile.println("\nFinal results:\n");
-		System.out.println("Threshold = " + threshold + "\n");
-		outputFile.println("Threshold = " + threshold + "\n");
-		
-		printHorizontalLine();
-		for (int row = 0; row < reportRows.length; row++)
-		{
-			printRow(row);
-			printHorizontalLine();
-		}
-		System.out.println("Winner" + ((winners.size() == 1) ? " is" : "s are") + ": " + winnerList());
-		outputFile.println("Winner" + ((winners.size() == 1) ? " is" : "s are") + ": " + winnerList());
+		return value * surplus / total;
 	}
 
-	private String winnerList()
+	/**
+	 * Moves the batch of ballots in the stacks to the continuing candidates
+	 * (or the exhausted stack), and takes their votes from the candidate they
+	 * came from
+	 * 
+	 * @param fromId  the candidate the ballots came from, or TabulationListener.FIRST_COUNT
+	 */
+	private void distributeBallots(int fromId)
 	{
-		String result = "";
-		for (CandidateStack winner : winners)
+		boolean detail = false;
+		for (TabulationListener l : listeners)
+			detail |= l.wantsBallotDetail();
+		int size = stacks.batchSize();
+		int last = dictionary.size(); // the exhausted ballots
+		int[] counts = new int[last + 1];
+		long[] votes = new long[last + 1];
+		if (!detail && pool != null && pool.getParallelism() > 1 && size >= PARALLEL_BALLOTS)
 		{
-			result += winner.getName() + ", ";
+			skipInParallel(size, counts, votes);
 		}
-		return result.substring(0, result.length() - 2);
-	}
+		else
+		{
+			for (int i = 0; i < size; i++)
+			{
+				int toId = stacks.skipTo(i, continuing);
+				int index = (toId == BallotCursor.EXHAUSTED) ? last : toId;
+				counts[index] += stacks.getCount(i);
+				votes[index] += stacks.getVotes(i);
+				if (detail)
+				{
+					String ballot = stacks.toString(i, dictionary, continuing);
+					for (TabulationListener l : listeners)
+					{
+						if (l.wantsBallotDetail())
+							l.ballotMoved(ballot, toId);
+					}
+				}
+			}
+		}
+		stacks.placeBatch();
 
-	private void printRow(int row)
-	{
-		System.out.print("|" + rightJustify(reportRows[row].get(0), longestName));
-		outputFile.print("|" + rightJustify(reportRows[row].get(0), longestName));
-		for (int col = 1; col < reportRows[row].size(); col++)
+		int moved = 0;
+		long movedVotes = 0;
+		for (int index = 0; index <= last; index++)
+		{
+			if (counts[index] == 0)
+				continue;
+			moved += counts[index];
+			movedVotes += votes[index];
+			// each candidate is moved in the heaps before the next one's votes
+			// change, since a heap can only put one changed candidate right
+			if (index < last)
+			{
+				candidates.addVotes(index, votes[index]);
+				candidates.votesChanged(index);
+			}
+		}
+		exhaustedVotes += votes[last];
+		if (fromId >= 0)
+		{
+			candidates.addVotes(fromId, -movedVotes);
+			candidates.votesChanged(fromId);
+		}
+		Metrics.transferred(fromId, moved, counts[last]);
+		if (!listeners.isEmpty())
 		{
-			System.out.print("|" + center(reportRows[row].get(col), CELL_WIDTH));
-			outputFile.print("|" + center(reportRows[row].get(col), CELL_WIDTH));
+			long[] votesReceived = Arrays.copyOf(votes, last);
+			for (TabulationListener l : listeners)
+				l.ballotsTransferred(fromId, moved, votesReceived, votes[last]);
 		}
-		System.out.println("|");
-		outputFile.println("|");
 	}
 
-	private String rightJustify(String string, int width)
+	/**
+	 * Moves a large batch of ballots on the pool. The batch is cut into parts,
+	 * each part moves its ballots on and adds up its own totals, and then the
+	 * totals are added together.
+	 * @param size  the number of ballots in the batch
+	 * @param counts  the ballots going to each candidate (and the exhausted stack last) are added here
+	 * @param votes  the votes going to each candidate (and the exhausted stack last) are added here
+	 */
+	private void skipInParallel(int size, int[] counts, long[] votes)
 	{
-		String result = string;
-		for (int i = 0; i < width - string.length(); i++)
-			result += " ";
-		return result;
+		int partCount = pool.getParallelism() * PARTS_PER_THREAD;
+		int partSize = (size + partCount - 1) / partCount;
+		ArrayList<Placement> parts = new ArrayList<Placement>();
+		for (int from = 0; from < size; from += partSize)
+			parts.add(new Placement(from, Math.min(size, from + partSize)));
+		pool.invoke(new RecursiveAction()
+		{
+			protected void compute()
+			{
+				ForkJoinTask.invokeAll(parts);
+			}
+		});
+		for (Placement part : parts)
+		{
+			for (int index = 0; index < counts.length; index++)
+			{
+				counts[index] += part.counts[index];
+				votes[index] += part.votes[index];
+			}
+		}
 	}
 
-	private void printHorizontalLine()
+	/**
+	 * The ballots from first up to (not including) end of the batch, moved to
+	 * the candidate each one now counts for, with the ballot count and votes
+	 * going to each candidate. The last total is the exhausted ballots.
+	 * Parts run at the same time, each calling skipTo only for its own batch
+	 * numbers, so each one only changes its own cursors in the shared stacks.
+	 */
+	private class Placement extends RecursiveAction
 	{
-		System.out.print("+");
-		outputFile.print("+");
-		for (int i = 0; i < longestName; i++)
+		private final static long serialVersionUID = 1L;
+
+		private final int first;
+		private final int end;
+		private int[] counts;
+		private long[] votes;
+
+		Placement(int first, int end)
 		{
-			System.out.print("-");
-			outputFile.print("-");
+			this.first = first;
+			this.end = end;
 		}
-		for (int col = 1; col < reportRows[0].size(); col++)
+
+		protected void compute()
 		{
-			System.out.print("+");
-			outputFile.print("+");
-			for (int ch = 0; ch < CELL_WIDTH; ch++)
+			int size = dictionary.size() + 1;
+			counts = new int[size];
+			votes = new long[size];
+			for (int i = first; i < end; i++)
 			{
-				System.out.print("-");
-				outputFile.print("-");
+				int topId = stacks.skipTo(i, continuing);
+				int index = (topId == BallotCursor.EXHAUSTED) ? size - 1 : topId;
+				counts[index] += stacks.getCount(i);
+				votes[index] += stacks.getVotes(i);
 			}
 		}
-		System.out.println("+");
-		outputFile.println("+");
 	}
 
-	private static String center(String text, int width)
+	public void eliminateLastCandidate()
 	{
-		if (text.length() > width)
-			return text.substring(0, width - 1) + ">";
-		String centered = "";
-		int rightSpaces = (width - text.length()) / 2;
-		for (int c = 0; c < rightSpaces; c++)
-			centered += " ";
-		centered = text + centered;
-		for (int c = centered.length(); c < width; c++)
-			centered = " " + centered;
-		return centered;
+		Metrics.Sample sample = Metrics.start("tabulate.eliminate");
+		startRound();
+		deleteCandidate(candidates.fewestVotes());
+		updateReport();
+		Metrics.stop(sample);
 	}
 
 	/**
-	 * Creates the results grid
+	 * Eliminates the lowest candidates all at once, when that can't change the
+	 * result. With the continuing candidates in order of votes v1 <= v2 <= ...,
+	 * the lowest k are eliminated for the largest k where v1 + ... + vk < v(k+1)
+	 * and v1 + ... + vk plus the most votes of any candidate is still below the
+	 * threshold, leaving at least as many candidates as seats left: even if all
+	 * their votes went to one candidate, none of them could catch candidate k+1
+	 * and nobody could reach the threshold in between, so they would have been
+	 * eliminated one at a time anyway. Their ballots are moved once, straight to
+	 * a candidate still in the count.
+	 * If there is no such k, only the lowest candidate is eliminated.
+	 * This must only be called when there are no new winners, so there is no
+	 * surplus waiting to be moved that could also lift a candidate.
 	 */
-	public void updateReport()
+	public void eliminateLastCandidates()
 	{
-		// add the column heading
-		int round = reportRows[0].size();
-		reportRows[0].add(round + "");
-		// for each name in table, get current ballot count from tabulator
-		for (int row = 1; row < reportRows.length-1; row++)
+		Metrics.Sample sample = Metrics.start("tabulate.eliminate");
+		startRound();
+		TallyHeap fewest = candidates.fewestHeap();
+		int maxEliminated = Math.max(1, numberOfActiveCandidiates() - (seats - numberOfWinners()));
+		long mostVotes = candidates.getVotes(candidates.mostVotes());
+		ArrayList<Integer> lowest = new ArrayList<Integer>();
+		long total = 0;
+		int eliminate = 1;
+		// once the lowest candidates together have as many votes as the top
+		// candidate, or could lift it to the threshold, no larger group can be
+		// eliminated
+		while (lowest.size() < maxEliminated && !fewest.isEmpty()
+				&& (lowest.isEmpty() || (total < mostVotes && total + mostVotes < thresholdVotes)))
 		{
-			String name = reportRows[row].get(0);
-			int count = getCount(reportRows[row].get(0));
-			if (inGroup(winners, name))
-			{
-				reportRows[row].add(count + " *");
-			}
-			else if (inGroup(eliminated, name))
-			{
-				reportRows[row].add("E");
-			}
-			else
-			{
-				reportRows[row].add(count + "");
-			}
+			int id = fewest.poll();
+			lowest.add(id);
+			total += candidates.getVotes(id);
+			if (!fewest.isEmpty() && total < candidates.getVotes(fewest.peek()) && total + mostVotes < thresholdVotes)
+				eliminate = lowest.size();
 		}
-		reportRows[reportRows.length-1].add(exhausted.getBallotCount() + "");
-	}
+		for (int i = eliminate; i < lowest.size(); i++)
+			fewest.add(lowest.get(i));
 
-	private boolean inGroup(ArrayList<CandidateStack> group, String name)
-	{
-		for (CandidateStack w : group)
+		for (int i = 0; i < eliminate; i++)
+			candidates.setState(lowest.get(i), CandidateState.ELIMINATED);
+		for (int i = 0; i < eliminate; i++)
 		{
-			if (w.getName().equals(name))
-				return true;
+			int id = lowest.get(i);
+			for (TabulationListener l : listeners)
+				l.candidateEliminated(id, candidates.getVotes(id));
+			stacks.takeAll(id);
+			distributeBallots(id);
 		}
-		return false;
+		updateReport();
+		Metrics.stop(sample);
 	}
 
-	private int getCount(String name)
+	/**
+	 * Elects every continuing candidate, most votes first, without moving any
+	 * ballots. This is used when there are no more continuing candidates than
+	 * seats left, so they will all win whatever happens.
+	 */
+	public void electAllContinuing()
 	{
-		for (CandidateStack w : winners)
+		Metrics.Sample sample = Metrics.start("tabulate.electAll");
+		startRound();
+		while (candidates.mostVotes() >= 0)
 		{
-			if (w.getName().equals(name))
-				return w.getBallotCount();
+			int id = candidates.mostVotes();
+			for (TabulationListener l : listeners)
+				l.candidateElected(id, candidates.getVotes(id));
+			winners.add(id);
+			report.addWinner(id);
+			candidates.setState(id, CandidateState.ELECTED);
 		}
-		for (CandidateStack s : stacks)
+		updateReport();
+		Metrics.stop(sample);
+	}
+
+	/**
+	 * Prints the results grid to the console
+	 */
+	public void printReport()
+	{
+		ReportRenderer.print(report, new TextReportRenderer(), System.out);
+	}
+
+	/**
+	 * Writes the results to a file
+	 * @param filename  the file to write
+	 * @param renderer  the format to write (text, csv, json or html)
+	 */
+	public void writeReport(String filename, ReportRenderer renderer)
+	{
+		try
 		{
-			if (s.getName().equals(name))
-				return s.getBallotCount();
+			ReportRenderer.write(report, renderer, filename);
 		}
-		for (CandidateStack e : eliminated)
+		catch (IOException e)
 		{
-			if (e.getName().equals(name))
-				return e.getBallotCount();
+			e.printStackTrace();
 		}
-		return -1;
+	}
+
+	/**
+	 * @return  the results so far
+	 */
+	public ResultsReport getReport()
+	{
+		return report;
+	}
+
+	/**
+	 * Adds the results of the round just counted to the report
+	 */
+	public void updateReport()
+	{
+		report.addRound(candidates.votesById(), candidates.statesById(), exhaustedVotes);
+		for (TabulationListener l : listeners)
+			l.roundFinished(round, exhaustedVotes);
+	}
+
+	/**
+	 * Shows a number of votes, with two decimal places only if it is not whole
+	 * @param votes  votes in fixed point
+	 * @return  the votes as text
+	 */
+	static String formatVotes(long votes)
+	{
+		if (votes < 0)
+			return "-" + formatVotes(-votes);
+		if (votes % BallotCursor.ONE == 0)
+			return (votes / BallotCursor.ONE) + "";
+		long hundredths = votes * 100 / BallotCursor.ONE;
+		return (hundredths / 100) + "." + (hundredths % 100 < 10 ? "0" : "") + (hundredths % 100);
+	}
+
+	/**
+	 * @return  the states and votes of the candidates
+	 */
+	public CandidateRegistry getCandidates()
+	{
+		return candidates;
 	}
 
 	public boolean emptyStacksExist()
 	{
-		for (CandidateStack s : stacks)
+		for (int id = continuing.nextSetBit(0); id >= 0; id = continuing.nextSetBit(id + 1))
 		{
-			if (s.isEmpty())
+			if (stacks.isEmpty(id))
 			{
 				return true;
 			}
@@ -425,9 +781,14 @@ public class Tabulator
 		return false;
 	}
 
+	public long getSeed()
+	{
+		return seed;
+	}
+
 	public int numberOfActiveCandidiates()
 	{
-		return stacks.size();
+		return candidates.count(CandidateState.CONTINUING);
 	}
 
 }
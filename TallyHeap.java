@@ -0,0 +1,166 @@
+package beta;
+
+/**
+ * A TallyHeap is an indexed priority queue of candidate ids ordered by their
+ * votes, so the candidate with the fewest (or most) votes is found without
+ * looking at every candidate. The votes are read from a shared array (see
+ * CandidateRegistry); when a candidate's votes change, update must be called
+ * to move them to their new place.
+ *
+ * Ties are broken by id, lowest first, so the order never depends on how
+ * the heap was built.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class TallyHeap
+{
+	private long[] votes;
+	private boolean most; // true to put the most votes on top
+	private int[] heap; // ids, as a binary heap
+	private int[] position; // index of each id in heap, or -1 if it is not in the heap
+	private int size;
+
+	/**
+	 * An empty heap
+	 * @param votes  the votes of each candidate, by id
+	 * @param most  true to have the candidate with the most votes on top,
+	 *              false for the fewest
+	 */
+	public TallyHeap(long[] votes, boolean most)
+	{
+		this.votes = votes;
+		this.most = most;
+		heap = new int[votes.length];
+		position = new int[votes.length];
+		for (int id = 0; id < position.length; id++)
+			position[id] = -1;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public boolean contains(int id)
+	{
+		return position[id] >= 0;
+	}
+
+	/**
+	 * @return  the id on top of the heap, or -1 if it is empty
+	 */
+	public int peek()
+	{
+		return (size == 0) ? -1 : heap[0];
+	}
+
+	/**
+	 * Takes the id on top off the heap
+	 * @return  that id, or -1 if the heap is empty
+	 */
+	public int poll()
+	{
+		if (size == 0)
+			return -1;
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * @param id  a candidate not in the heap
+	 */
+	public void add(int id)
+	{
+		heap[size] = id;
+		position[id] = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * @param id  a candidate, which does not have to be in the heap
+	 */
+	public void remove(int id)
+	{
+		int index = position[id];
+		if (index < 0)
+			return;
+		size--;
+		position[id] = -1;
+		if (index < size)
+		{
+			int last = heap[size];
+			heap[index] = last;
+			position[last] = index;
+			siftUp(index);
+			siftDown(position[last]);
+		}
+	}
+
+	/**
+	 * Moves a candidate whose votes have changed to their new place. Only one
+	 * candidate's votes may have changed since the heap was last in order.
+	 * @param id  a candidate, which does not have to be in the heap
+	 */
+	public void update(int id)
+	{
+		int index = position[id];
+		if (index < 0)
+			return;
+		siftUp(index);
+		siftDown(position[id]);
+	}
+
+	/**
+	 * @return  true if id a belongs above id b
+	 */
+	private boolean above(int a, int b)
+	{
+		if (votes[a] != votes[b])
+			return most ? votes[a] > votes[b] : votes[a] < votes[b];
+		return a < b;
+	}
+
+	private void siftUp(int index)
+	{
+		int id = heap[index];
+		while (index > 0)
+		{
+			int parent = (index - 1) / 2;
+			if (!above(id, heap[parent]))
+				break;
+			heap[index] = heap[parent];
+			position[heap[index]] = index;
+			index = parent;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+
+	private void siftDown(int index)
+	{
+		int id = heap[index];
+		while (true)
+		{
+			int child = 2 * index + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && above(heap[child + 1], heap[child]))
+				child++;
+			if (!above(heap[child], id))
+				break;
+			heap[index] = heap[child];
+			position[heap[index]] = index;
+			index = child;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+}
@@ -0,0 +1,85 @@
+package beta;
+
+/**
+ * A TextListener writes the events of a count as lines of text, the way the
+ * Tabulator used to print them. Subclasses decide where the lines go.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public abstract class TextListener implements TabulationListener
+{
+	private boolean ballotDetail;
+	private CandidateDictionary dictionary;
+
+	/**
+	 * @param ballotDetail  true to write a line for every ballot moved
+	 */
+	protected TextListener(boolean ballotDetail)
+	{
+		this.ballotDetail = ballotDetail;
+	}
+
+	/**
+	 * Writes one line
+	 * @param line  the text, without a line break
+	 */
+	protected abstract void println(String line);
+
+	public void tabulationStarted(CandidateDictionary dictionary, int seats, int threshold)
+	{
+		this.dictionary = dictionary;
+		println("Counting " + dictionary.size() + " candidates for " + seats
+				+ " seat" + (seats == 1 ? "" : "s") + ", threshold = " + threshold);
+	}
+
+	public void roundStarted(int round)
+	{
+		println("\nRound " + round);
+	}
+
+	public void candidateElected(int id, long votes)
+	{
+		println(dictionary.nameOf(id) + " is elected with " + Tabulator.formatVotes(votes) + " votes");
+	}
+
+	public void candidateEliminated(int id, long votes)
+	{
+		println(dictionary.nameOf(id) + " is eliminated with " + Tabulator.formatVotes(votes) + " votes");
+	}
+
+	public void ballotsTransferred(int fromId, int ballotCount, long[] votesReceived, long votesExhausted)
+	{
+		long votes = votesExhausted;
+		StringBuilder received = new StringBuilder();
+		for (int id = 0; id < votesReceived.length; id++)
+		{
+			votes += votesReceived[id];
+			if (votesReceived[id] != 0)
+				received.append(", ").append(dictionary.nameOf(id)).append(" +")
+						.append(Tabulator.formatVotes(votesReceived[id]));
+		}
+		if (votesExhausted != 0)
+			received.append(", exhausted +").append(Tabulator.formatVotes(votesExhausted));
+		String worth = (votes == ballotCount * BallotCursor.ONE) ? "" : " worth " + Tabulator.formatVotes(votes) + " votes";
+		String from = (fromId == FIRST_COUNT) ? "" : " from " + dictionary.nameOf(fromId);
+		if (received.length() > 0)
+			received.replace(0, 1, ":");
+		println("A total of " + ballotCount + " ballots" + worth + " were distributed" + from + received);
+	}
+
+	public void ballotMoved(String ballot, int toId)
+	{
+		println("Moving ballot: " + ballot);
+	}
+
+	public void roundFinished(int round, long exhaustedVotes)
+	{
+		println("Exhausted after round " + round + ": " + Tabulator.formatVotes(exhaustedVotes));
+	}
+
+	public boolean wantsBallotDetail()
+	{
+		return ballotDetail;
+	}
+}
@@ -0,0 +1,155 @@
+package beta;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a ResultsReport as a fixed-width grid, a row for each candidate and a
+ * column for each round. A winner's votes are marked with * and an eliminated
+ * candidate shows E.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class TextReportRenderer implements ReportRenderer
+{
+	final static int CELL_WIDTH = 8;
+	final static String NEW_LINE = System.lineSeparator();
+
+	public String getExtension()
+	{
+		return "txt";
+	}
+
+	public void render(ResultsReport report, Writer out) throws IOException
+	{
+		int longestName = 0;
+		for (int id = 0; id < report.getCandidateCount(); id++)
+			longestName = Math.max(longestName, report.getName(id).length());
+
+		out.write(NEW_LINE + "Final results:" + NEW_LINE + NEW_LINE);
+		out.write("Threshold = " + report.getThreshold() + NEW_LINE + NEW_LINE);
+		if (report.getTransferMode() == Tabulator.TransferMode.FRACTIONAL)
+			out.write("Surplus transfers are fractional" + NEW_LINE + NEW_LINE);
+		else
+			out.write("Surplus selection seed = " + report.getSeed() + NEW_LINE + NEW_LINE);
+
+		// every line of the grid is built in one StringBuilder, reused
+		StringBuilder line = new StringBuilder();
+		String horizontalLine = horizontalLine(line, longestName, report.getRoundCount());
+		out.write(horizontalLine);
+
+		line.setLength(0);
+		line.append('|');
+		center(line, "Names", longestName);
+		for (int round = 1; round <= report.getRoundCount(); round++)
+		{
+			line.append('|');
+			center(line, Integer.toString(round), CELL_WIDTH);
+		}
+		endRow(out, line, horizontalLine);
+
+		for (int id = 0; id < report.getCandidateCount(); id++)
+		{
+			line.setLength(0);
+			line.append('|');
+			leftJustify(line, report.getName(id), longestName);
+			for (int round = 1; round <= report.getRoundCount(); round++)
+			{
+				line.append('|');
+				center(line, cell(report, id, round), CELL_WIDTH);
+			}
+			endRow(out, line, horizontalLine);
+		}
+
+		line.setLength(0);
+		line.append('|');
+		center(line, "Exhausted", longestName);
+		for (int round = 1; round <= report.getRoundCount(); round++)
+		{
+			line.append('|');
+			center(line, Tabulator.formatVotes(report.getExhausted(round)), CELL_WIDTH);
+		}
+		endRow(out, line, horizontalLine);
+
+		out.write("Winner" + ((report.getWinners().size() == 1) ? " is" : "s are") + ": "
+				+ winnerList(report) + NEW_LINE);
+	}
+
+	/**
+	 * @return  the text of a candidate's cell in the grid
+	 */
+	static String cell(ResultsReport report, int id, int round)
+	{
+		CandidateState state = report.getState(id, round);
+		if (state == CandidateState.ELIMINATED)
+			return "E";
+		String votes = Tabulator.formatVotes(report.getVotes(id, round));
+		return (state == CandidateState.ELECTED) ? votes + " *" : votes;
+	}
+
+	/**
+	 * @return  the names of the winners, separated by commas
+	 */
+	static String winnerList(ResultsReport report)
+	{
+		StringBuilder result = new StringBuilder();
+		for (int id : report.getWinners())
+		{
+			if (result.length() > 0)
+				result.append(", ");
+			result.append(report.getName(id));
+		}
+		return result.toString();
+	}
+
+	private static void endRow(Writer out, StringBuilder line, String horizontalLine) throws IOException
+	{
+		line.append('|').append(NEW_LINE);
+		out.append(line);
+		out.write(horizontalLine);
+	}
+
+	private static String horizontalLine(StringBuilder line, int longestName, int rounds)
+	{
+		line.setLength(0);
+		line.append('+');
+		repeat(line, '-', longestName);
+		for (int round = 1; round <= rounds; round++)
+		{
+			line.append('+');
+			repeat(line, '-', CELL_WIDTH);
+		}
+		line.append('+').append(NEW_LINE);
+		return line.toString();
+	}
+
+	private static void leftJustify(StringBuilder line, String text, int width)
+	{
+		line.append(text);
+		repeat(line, ' ', width - text.length());
+	}
+
+	/**
+	 * Centers text in width characters, with any odd space on the left.
+	 * Text that is too wide is cut off and ends with >.
+	 */
+	private static void center(StringBuilder line, String text, int width)
+	{
+		if (text.length() > width)
+		{
+			line.append(text, 0, width - 1).append('>');
+			return;
+		}
+		int rightSpaces = (width - text.length()) / 2;
+		repeat(line, ' ', width - text.length() - rightSpaces);
+		line.append(text);
+		repeat(line, ' ', rightSpaces);
+	}
+
+	private static void repeat(StringBuilder line, char c, int times)
+	{
+		for (int i = 0; i < times; i++)
+			line.append(c);
+	}
+}
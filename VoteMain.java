@@ -1,6 +1,8 @@
 package beta;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 /**
  * This is the main class for a tool to use in conjunction with a Google form (see usage notes below).
@@ -8,11 +10,53 @@ import java.util.ArrayList;
  * collected in the form. It can be used in multi-seat or single-seat elections (for single-seat
  * elections it is equivalent to the instant-runoff from of RCV).
  * This tool is composed of the following classes:
+ * 	AsyncFileListener.java
  * 	Ballot.java
+ * 	BallotCache.java
+ * 	BallotCursor.java
+ * 	BallotGrouper.java
+ * 	BallotList.java
  * 	BallotReader.java
- * 	CandidateStack.java
+ * 	BallotSnapshot.java
+ * 	BallotStacks.java
+ * 	BallotStore.java
+ * 	BallotSummary.java
+ * 	BatchMain.java
+ * 	BatchRunner.java
+ * 	CandidateDictionary.java
+ * 	CandidateRegistry.java
+ * 	CandidateState.java
+ * 	CsvCursor.java
+ * 	CsvReportRenderer.java
+ * 	DirectBallotStacks.java
+ * 	DirectBallotStore.java
  * 	GoogleCSVConverter.java
+ * 	GoogleFormReader.java
+ * 	HeapBallotStacks.java
+ * 	HtmlReportRenderer.java
+ * 	JsonReportRenderer.java
+ * 	LiveMain.java
+ * 	LiveTabulation.java
+ * 	Metrics.java
+ * 	PairwiseMatrix.java
+ * 	ParallelFormReader.java
+ * 	PrintListener.java
+ * 	Race.java
+ * 	RaceResult.java
+ * 	ReportRenderer.java
+ * 	ResampledStore.java
+ * 	ResultsReport.java
+ * 	RoundHistory.java
+ * 	Scenario.java
+ * 	ScenarioRunner.java
+ * 	ServiceMain.java
+ * 	StabilityAnalysis.java
+ * 	TabulationListener.java
+ * 	TabulationService.java
  * 	Tabulator.java
+ * 	TallyHeap.java
+ * 	TextListener.java
+ * 	TextReportRenderer.java
  * 	VoteMain.java (this file)
  * 	VoteTools.java
  * 	
@@ -37,55 +81,192 @@ public class VoteMain
 	 * 6. Set the number of seats to be filled below
 	 * 7. Set filename below to the first part of the name of the csv file
 	 * 8. Run this file
+	 *    (to recount later without the csv file, set writeBallotSummary or
+	 *    writeSnapshot below to true to also write a ballot summary file named
+	 *    filename + ".summary" or a binary snapshot named filename + ".rcvb", then
+	 *    set useBallotSummary or useSnapshot to true for the recount - the snapshot
+	 *    loads fastest, but for a big election it is a big file)
+	 * 
+	 * Surplus ballots are picked at random. The seed used is printed in the report;
+	 * to repeat a count exactly, set surplusSeed below to that number.
+	 * Or set transferMode below to FRACTIONAL to move a fraction of every surplus
+	 * ballot instead, which gives the same result every time.
+	 * 
+	 * What happens in each round is printed to the console and logged to
+	 * "voting log.txt". Set logEveryBallot below to true to also log every ballot
+	 * as it is moved (this is slow for a large election).
+	 * 
+	 * The results grid is printed and written to reportFilename + ".txt". To also
+	 * get the results as csv, json or html, add CsvReportRenderer,
+	 * JsonReportRenderer or HtmlReportRenderer to reportFormats below.
+	 * 
+	 * To see how much a result depends on which surplus ballots were picked, set
+	 * stabilityRuns below to a number of counts (like 10000). The election is
+	 * counted that many more times with different seeds and how often each
+	 * candidate won is printed. Set resampleVoters to true to also count a
+	 * random sample of the voters (drawn with replacement) each time.
+	 * 
+	 * The head-to-head results (how many voters ranked each candidate above each
+	 * other one) are printed after the report, with the Condorcet winner or, if
+	 * there isn't one, the Smith set. Set headToHead below to false to skip them.
+	 * 
+	 * Set whatIfs below to true to also count the election with one more seat,
+	 * one fewer seat, and each candidate withdrawn in turn (all at the same time,
+	 * from the ballots already read) and print who would have won each way.
+	 * 
+	 * Set showMetrics below to true to print how long each part of the count
+	 * took and how much memory it used. The same numbers are recorded as Java
+	 * Flight Recorder events when the tool is run with
+	 * -XX:StartFlightRecording=filename=count.jfr (see Metrics).
+	 * 
+	 * For a very large election (millions of ballots), set offHeap below to true.
+	 * The ballots and the count are then kept outside the Java heap (see
+	 * DirectBallotStore and DirectBallotStacks), which needs far less memory.
+	 * The csv file is read directly and no summary or snapshot is written.
 	 */
 	public static void main(String[] args)
 	{
 		int seatsToBeFilled = 3;
 		String filename = "iceCreamTest";
+		boolean useBallotSummary = false;
+		boolean writeBallotSummary = false; // write filename + ".summary" after reading the csv file
+		boolean useSnapshot = false;
+		boolean writeSnapshot = false; // write filename + ".rcvb" after reading the csv file
+		boolean writeTextFile = false; // also write the ballots as names to filename + ".txt"
+		long surplusSeed = 0; // 0 picks a new seed
+		Tabulator.TransferMode transferMode = Tabulator.TransferMode.WHOLE_BALLOTS;
+		boolean logEveryBallot = false;
+		boolean bulkElimination = true; // eliminate all the candidates who can't catch up at once
+		boolean finishEarly = true; // elect the last candidates when there are no more than seats left
+		String reportFilename = "voting report"; // the extension of each format is added
+		ReportRenderer[] reportFormats = { new TextReportRenderer() };
+		int stabilityRuns = 0;
+		boolean resampleVoters = false;
+		boolean headToHead = true;
+		boolean whatIfs = false;
+		boolean showMetrics = false;
+		boolean offHeap = false;
 		
-		GoogleCSVConverter.convertCSVGoogleFile(filename);
-		ArrayList<String> candidates = VoteTools.makeCandidateList(filename + ".txt");
-		BallotReader getBallots = new BallotReader(filename + ".txt");
-		ArrayList<Ballot> ballots = getBallots.makeBallotList();
-		Tabulator tallier = new Tabulator(candidates, ballots, seatsToBeFilled);
-		
-		/*
-		 * The ranked choice voting method:
-		 * 1. Make stacks of ballots according to the first rank on each ballot
-		 * 2. Declare as a winner anyone who is already over the threshold and
-		 *    distribute their surplus ballots
-		 * 3. If there are any seats left and there are candidates with no first
-		 *    choice ballots, then those candidates are eliminated
-		 * 4. As long as there are seats to fill
-		 *    a. if there are new winners, distribute their surplus ballots
-		 *    b. otherwise, eliminate the lowest candidate and distribute their ballots
-		 */
-		tallier.makeInitialBallotStacks();
-		if (tallier.anyNewWinners())
+		Metrics.setEnabled(showMetrics || Metrics.isEnabled());
+		BallotStore ballots;
+		if (useSnapshot)
+		{
+			try
+			{
+				ballots = BallotSnapshot.load(filename + ".rcvb");
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				return;
+			}
+		}
+		else if (useBallotSummary)
 		{
-			tallier.declareWinners();
+			BallotSummary summary = BallotSummary.read(filename + ".summary");
+			ballots = new BallotList(summary.getDictionary(), summary.getGroups());
 		}
-		
-		if(tallier.numberOfWinners() < seatsToBeFilled && tallier.emptyStacksExist())
-			tallier.eliminateAllWithNoBallots();
-		
-		while(tallier.numberOfWinners() < seatsToBeFilled && tallier.numberOfActiveCandidiates() > 0)
+		else if (offHeap)
+		{
+			try
+			{
+				ballots = DirectBallotStore.readForm(filename + ".csv");
+			}
+			catch (IOException e)
+			{
+				e.printStackTrace();
+				return;
+			}
+		}
+		else
 		{
-			if (tallier.anyNewWinners())
+			CandidateDictionary candidates;
+			ArrayList<Ballot> groups;
+			if (writeTextFile)
 			{
-				tallier.declareWinners();
+				GoogleFormReader getBallots = new GoogleFormReader(filename + ".csv");
+				getBallots.setTextOutput(filename + ".txt");
+				groups = getBallots.readBallotGroups();
+				candidates = getBallots.getDictionary();
 			}
 			else
 			{
-				tallier.eliminateLastCandidate();
+				ParallelFormReader getBallots = new ParallelFormReader(filename + ".csv");
+				groups = getBallots.readBallotGroups();
+				candidates = getBallots.getDictionary();
 			}
+			if (writeBallotSummary)
+			{
+				new BallotSummary(candidates, groups).write(filename + ".summary");
+			}
+			if (writeSnapshot)
+			{
+				try
+				{
+					BallotSnapshot.write(filename + ".rcvb", candidates, groups, true);
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+			ballots = new BallotList(candidates, groups);
 		}
+		if (surplusSeed == 0)
+		{
+			surplusSeed = new SplittableRandom().nextLong();
+		}
+		Tabulator tallier = new Tabulator(ballots, seatsToBeFilled, transferMode, surplusSeed);
+		tallier.addListener(new PrintListener(System.out, false));
+		try
+		{
+			tallier.addListener(new AsyncFileListener("voting log.txt", logEveryBallot));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		tallier.setBulkElimination(bulkElimination);
+		tallier.setFinishEarly(finishEarly);
+		tallier.setOffHeap(offHeap);
+		
+		// the ranked choice voting method is described in Tabulator.tabulate
+		tallier.tabulate();
 		System.out.println("\nRanked Choice Voting simulation complete");
 		if (tallier.numberOfWinners() < seatsToBeFilled)
 		{
 			System.out.println("Election could not be completed because not enough candidates reached the threshold.");
 		}
 		tallier.printReport();
+		for (ReportRenderer format : reportFormats)
+		{
+			tallier.writeReport(reportFilename + "." + format.getExtension(), format);
+		}
+		if (Metrics.isEnabled())
+		{
+			Metrics.printSummary(System.out);
+		}
+		if (headToHead)
+		{
+			new PairwiseMatrix(ballots).printSummary(System.out);
+		}
+		
+		if (stabilityRuns > 0)
+		{
+			StabilityAnalysis analysis = new StabilityAnalysis(ballots, seatsToBeFilled, transferMode);
+			analysis.setBootstrap(resampleVoters);
+			analysis.run(stabilityRuns, surplusSeed);
+			analysis.printSummary(System.out);
+		}
+		
+		if (whatIfs)
+		{
+			ArrayList<Scenario> scenarios = ScenarioRunner.whatIfs(ballots.getDictionary(), seatsToBeFilled,
+					transferMode, surplusSeed);
+			ScenarioRunner runner = new ScenarioRunner(ballots, Runtime.getRuntime().availableProcessors());
+			ScenarioRunner.printSummary(scenarios, runner.run(scenarios), System.out);
+		}
 	}
 
 }
@@ -1,71 +1,82 @@
-package beta;
-
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.Scanner;
-
-/*
- * This class reads the text file of ballots generated by
- * the online form and returns a list of all candidates names contained in the file
-*/
-public class VoteTools
-{
-
-	public static ArrayList<String> makeCandidateList(String fileName)
-	{
-		FileReader file = null;
-		try
-		{
-			file = new FileReader(fileName);
-		}
-		catch (FileNotFoundException e)
-		{
-			e.printStackTrace();
-		}
-		Scanner fileScanner = new Scanner(file);
-		fileScanner.nextLine(); // throw away header (first line)
-		String line;
-		ArrayList<String> nameList = new ArrayList<String>();
-		
-		while (fileScanner.hasNextLine())
-		{
-			line = fileScanner.nextLine();
-			ArrayList<String> lineTokenized = tokenizeString(line, ',');
-			lineTokenized.remove(0);
-			for (String name : lineTokenized)
-			{
-				if (name.length() > 0 && !nameList.contains(name))
-				{
-					nameList.add(name);
-				}
-			}	
-		}
-		
-		fileScanner.close();
-		
-		return nameList;
-	}
-
-	/**
-	 * This method tokenizes a String based on a character delimiter
-	 * @param line - the string to be tokenized
-	 * @param delimiter - a single character delimiter
-	 * @return - an ArrayList of String tokens
-	 */
-	public static ArrayList<String> tokenizeString(String line, char delimiter)
-	{
-		ArrayList<String> tokens = new ArrayList<String>();
-		int start = 0;
-		int end = line.indexOf(delimiter);
-		while (end != -1)
-		{
-			tokens.add(line.substring(start, end));
-			start = end + 1;
-			end = line.indexOf(delimiter, start);
-		}
-		tokens.add(line.substring(start));
-		return tokens;
-	}
-
-}
+package beta;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/*
+ * This class reads the text file of ballots generated by
+ * the online form and returns a list of all candidates names contained in the file
+*/
+public class VoteTools
+{
+
+	public static ArrayList<String> makeCandidateList(String fileName)
+	{
+		FileReader file = null;
+		try
+		{
+			file = new FileReader(fileName);
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+		}
+		CsvCursor cursor = new CsvCursor(file);
+		ArrayList<String> nameList = new ArrayList<String>();
+		try
+		{
+			cursor.nextRecord(); // throw away header (first line)
+			while (cursor.nextRecord())
+			{
+				cursor.nextField(); // skip the header field
+				while (cursor.nextField())
+				{
+					if (!cursor.fieldIsEmpty() && !contains(nameList, cursor))
+					{
+						nameList.add(cursor.fieldAsString());
+					}
+				}
+			}
+			file.close();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		return nameList;
+	}
+
+	private static boolean contains(ArrayList<String> nameList, CsvCursor cursor)
+	{
+		for (String name : nameList)
+		{
+			if (cursor.fieldEquals(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This method tokenizes a String based on a character delimiter
+	 * Quoted tokens may contain the delimiter (see CsvCursor); the quotes are removed.
+	 * This makes a String for every token, so for reading many lines use a CsvCursor
+	 * @param line - the string to be tokenized
+	 * @param delimiter - a single character delimiter
+	 * @return - an ArrayList of String tokens
+	 */
+	public static ArrayList<String> tokenizeString(String line, char delimiter)
+	{
+		ArrayList<String> tokens = new ArrayList<String>();
+		CsvCursor cursor = new CsvCursor(delimiter);
+		cursor.reset(line);
+		while (cursor.nextField())
+		{
+			tokens.add(cursor.fieldAsString());
+		}
+		return tokens;
+	}
+
+}
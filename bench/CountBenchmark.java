@@ -0,0 +1,219 @@
+package beta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the parts of a count that take the time:
+ *   convert       GoogleCSVConverter writing the csv file as names
+ *   readNames     BallotReader reading that file into a list of ballots
+ *   readForm      GoogleFormReader reading the csv file into a list of ballots
+ *   ingest        ParallelFormReader reading the csv file into ballot groups
+ *   firstCount    placing every ballot with its first choice
+ *   eliminate     one elimination, after the first count
+ *   surplus       declaring the first winner and transferring their surplus
+ *   tabulate      the whole count
+ *   report        writing a finished count's report with TextReportRenderer
+ * Each is run on an election made by ElectionGenerator, for every combination
+ * of the ballot and candidate counts below, and the counts for both transfer
+ * modes. eliminate and surplus change the count they run on, so a fresh count
+ * is brought up to that point before each call, outside the time measured.
+ *
+ * Run them with "gradle jmh" (see build.gradle), which also runs JMH's
+ * garbage collection profiler, so the results show the bytes allocated per
+ * operation (gc.alloc.rate.norm) as well as the time.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CountBenchmark
+{
+	final static int SEATS = 3;
+	final static long SEED = 1;
+
+	/**
+	 * A generated election: its csv file, and its ballots already read
+	 */
+	@State(Scope.Benchmark)
+	public static class Election
+	{
+		@Param({ "1000", "100000" })
+		public int ballots;
+
+		@Param({ "10", "50" })
+		public int candidates;
+
+		File csv;
+		String names; // the ballots as names, written by GoogleCSVConverter
+		BallotStore store;
+
+		@Setup(Level.Trial)
+		public void generate() throws IOException
+		{
+			csv = File.createTempFile("benchmark-" + ballots + "-" + candidates + "-", ".csv");
+			ElectionGenerator generator = new ElectionGenerator(candidates, 1);
+			generator.setDepth(1, 10);
+			generator.write(csv.getPath(), ballots);
+			ParallelFormReader reader = new ParallelFormReader(csv.getPath());
+			ArrayList<Ballot> groups = reader.readBallotGroups();
+			store = new BallotList(reader.getDictionary(), groups);
+			String base = csv.getPath().substring(0, csv.getPath().length() - ".csv".length());
+			GoogleCSVConverter.convertCSVGoogleFile(base);
+			names = base + ".txt";
+		}
+
+		@TearDown(Level.Trial)
+		public void delete()
+		{
+			csv.delete();
+			new File(names).delete();
+		}
+	}
+
+	/**
+	 * How the surplus votes are transferred
+	 */
+	@State(Scope.Benchmark)
+	public static class Counting
+	{
+		@Param({ "WHOLE_BALLOTS", "FRACTIONAL" })
+		public Tabulator.TransferMode transferMode;
+	}
+
+	/**
+	 * A count after its first count, with no winner yet
+	 */
+	@State(Scope.Thread)
+	public static class BeforeElimination
+	{
+		Tabulator tallier;
+
+		@Setup(Level.Invocation)
+		public void count(Election election, Counting counting)
+		{
+			tallier = new Tabulator(election.store, SEATS, counting.transferMode, SEED);
+			tallier.makeInitialBallotStacks();
+		}
+	}
+
+	/**
+	 * A count brought up to its first winner (eliminating one candidate at a
+	 * time until someone reaches the threshold), before the winner is declared
+	 */
+	@State(Scope.Thread)
+	public static class BeforeSurplus
+	{
+		Tabulator tallier;
+
+		@Setup(Level.Invocation)
+		public void count(Election election, Counting counting)
+		{
+			tallier = new Tabulator(election.store, SEATS, counting.transferMode, SEED);
+			tallier.makeInitialBallotStacks();
+			while (!tallier.anyNewWinners() && tallier.numberOfActiveCandidiates() > 1)
+				tallier.eliminateLastCandidate();
+		}
+	}
+
+	/**
+	 * The report of a finished count
+	 */
+	@State(Scope.Benchmark)
+	public static class Finished
+	{
+		ResultsReport report;
+
+		@Setup(Level.Trial)
+		public void count(Election election, Counting counting)
+		{
+			Tabulator tallier = new Tabulator(election.store, SEATS, counting.transferMode, SEED);
+			tallier.tabulate();
+			report = tallier.getReport();
+		}
+	}
+
+	@Benchmark
+	public void convert(Election election)
+	{
+		String path = election.csv.getPath();
+		GoogleCSVConverter.convertCSVGoogleFile(path.substring(0, path.length() - ".csv".length()));
+	}
+
+	@Benchmark
+	public ArrayList<Ballot> readNames(Election election)
+	{
+		return new BallotReader(election.names, election.store.getDictionary()).makeBallotList();
+	}
+
+	@Benchmark
+	public ArrayList<Ballot> readForm(Election election)
+	{
+		return new GoogleFormReader(election.csv.getPath()).readBallots();
+	}
+
+	@Benchmark
+	public ArrayList<Ballot> ingest(Election election)
+	{
+		return new ParallelFormReader(election.csv.getPath()).readBallotGroups();
+	}
+
+	@Benchmark
+	public Tabulator firstCount(Election election, Counting counting)
+	{
+		Tabulator tallier = new Tabulator(election.store, SEATS, counting.transferMode, SEED);
+		tallier.makeInitialBallotStacks();
+		return tallier;
+	}
+
+	@Benchmark
+	public Tabulator eliminate(BeforeElimination count)
+	{
+		count.tallier.eliminateLastCandidate();
+		return count.tallier;
+	}
+
+	@Benchmark
+	public Tabulator surplus(BeforeSurplus count)
+	{
+		count.tallier.declareWinners();
+		return count.tallier;
+	}
+
+	@Benchmark
+	public ResultsReport tabulate(Election election, Counting counting)
+	{
+		Tabulator tallier = new Tabulator(election.store, SEATS, counting.transferMode, SEED);
+		tallier.tabulate();
+		return tallier.getReport();
+	}
+
+	@Benchmark
+	public StringWriter report(Finished finished) throws IOException
+	{
+		StringWriter out = new StringWriter();
+		new TextReportRenderer().render(finished.report, out);
+		return out;
+	}
+}
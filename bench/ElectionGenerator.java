@@ -0,0 +1,227 @@
+package beta;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * An ElectionGenerator writes made-up Google form csv files, in the same format
+ * as a real download, for trying the tool on elections bigger than the ones we
+ * have (see usage notes below).
+ *
+ * How voters rank the candidates is set by the distribution:
+ * UNIFORM - every candidate is as likely as any other at every rank
+ * ZIPF - candidate n is picked about 1/n^s as often as candidate 1, so a few
+ *        candidates get most of the votes and there is a long tail
+ * BLOCS - voters are split into blocs, and each bloc ranks the candidates in
+ *         its own order (with a Zipf spread along it). With two blocs the
+ *         second bloc's order is the first one's reversed.
+ *
+ * Each voter ranks between minDepth and maxDepth candidates. The same seed
+ * always writes the same file.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class ElectionGenerator
+{
+	public enum Distribution
+	{
+		UNIFORM, ZIPF, BLOCS
+	}
+
+	final static String QUESTION = "Rank the candidates";
+	final static String TIMESTAMP = "2024/05/01 8:00:00 AM EST";
+
+	private int candidates;
+	private long seed;
+	private Distribution distribution = Distribution.UNIFORM;
+	private double exponent = 1.0;
+	private int blocs = 2;
+	private int minDepth = 1;
+	private int maxDepth;
+	private double[] cumulativeWeights; // for ZIPF and BLOCS, by position in the order
+
+	/*
+	 * Usage notes:
+	 * 1. Set the size of the election and how voters rank below
+	 * 2. Run this file (the csv file is written to this project's folder, and
+	 *    can be counted with VoteMain like a real one)
+	 */
+	public static void main(String[] args)
+	{
+		String filename = "generated election";
+		int ballots = 100000;
+		int candidates = 20;
+		Distribution distribution = Distribution.ZIPF;
+		int maxDepth = 10;
+		long seed = 1;
+
+		ElectionGenerator generator = new ElectionGenerator(candidates, seed);
+		generator.setDistribution(distribution);
+		generator.setDepth(1, maxDepth);
+		try
+		{
+			generator.write(filename + ".csv", ballots);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param candidates  the number of candidates, named Candidate 1, Candidate 2, ...
+	 * @param seed  the seed for the rankings
+	 */
+	public ElectionGenerator(int candidates, long seed)
+	{
+		this.candidates = candidates;
+		this.seed = seed;
+		maxDepth = candidates;
+	}
+
+	public void setDistribution(Distribution distribution)
+	{
+		this.distribution = distribution;
+	}
+
+	/**
+	 * @param exponent  how quickly popularity falls off, for ZIPF and BLOCS (1 by default)
+	 */
+	public void setExponent(double exponent)
+	{
+		this.exponent = exponent;
+	}
+
+	/**
+	 * @param blocs  the number of blocs, for BLOCS (2 by default)
+	 */
+	public void setBlocs(int blocs)
+	{
+		this.blocs = blocs;
+	}
+
+	/**
+	 * Sets how many candidates each voter ranks (all of them by default)
+	 * @param minDepth  the fewest a voter ranks (at least 1)
+	 * @param maxDepth  the most a voter ranks
+	 */
+	public void setDepth(int minDepth, int maxDepth)
+	{
+		this.minDepth = Math.max(1, Math.min(minDepth, candidates));
+		this.maxDepth = Math.max(this.minDepth, Math.min(maxDepth, candidates));
+	}
+
+	/**
+	 * Writes the file
+	 * @param filename  the file to write, including the extension
+	 * @param ballots  the number of responses
+	 * @throws IOException  if the file can't be written
+	 */
+	public void write(String filename, int ballots) throws IOException
+	{
+		SplittableRandom random = new SplittableRandom(seed);
+		int[][] orders = blocOrders(random);
+		cumulativeWeights = new double[candidates];
+		double total = 0;
+		for (int i = 0; i < candidates; i++)
+		{
+			total += (distribution == Distribution.UNIFORM) ? 1 : 1 / Math.pow(i + 1, exponent);
+			cumulativeWeights[i] = total;
+		}
+
+		Writer out = new BufferedWriter(new FileWriter(filename), 1 << 16);
+		out.write("Timestamp");
+		for (int c = 0; c < candidates; c++)
+			out.write("," + QUESTION + " [Candidate " + (c + 1) + "]");
+		out.write(System.lineSeparator());
+
+		int[] ranks = new int[candidates]; // the rank given to each candidate, 0 for none
+		boolean[] picked = new boolean[candidates];
+		StringBuilder line = new StringBuilder();
+		for (int b = 0; b < ballots; b++)
+		{
+			int[] order = orders[random.nextInt(orders.length)];
+			int depth = minDepth + random.nextInt(maxDepth - minDepth + 1);
+			Arrays.fill(ranks, 0);
+			Arrays.fill(picked, false);
+			for (int r = 1; r <= depth; r++)
+			{
+				int position = pick(random, picked);
+				picked[position] = true;
+				ranks[order[position]] = r;
+			}
+			line.setLength(0);
+			line.append(TIMESTAMP);
+			for (int rank : ranks)
+			{
+				line.append(',');
+				if (rank > 0)
+					line.append(rank);
+			}
+			line.append(System.lineSeparator());
+			out.append(line);
+		}
+		out.close();
+	}
+
+	/**
+	 * The order each bloc ranks the candidates in. UNIFORM and ZIPF have a single
+	 * order, candidate 1 first.
+	 */
+	private int[][] blocOrders(SplittableRandom random)
+	{
+		int count = (distribution == Distribution.BLOCS) ? Math.max(1, blocs) : 1;
+		int[][] orders = new int[count][candidates];
+		for (int c = 0; c < candidates; c++)
+			orders[0][c] = c;
+		if (distribution != Distribution.BLOCS)
+			return orders;
+		for (int b = 0; b < count; b++)
+		{
+			if (b == 1 && count == 2)
+			{
+				for (int c = 0; c < candidates; c++)
+					orders[1][c] = orders[0][candidates - 1 - c];
+				continue;
+			}
+			for (int c = 0; c < candidates; c++)
+				orders[b][c] = c;
+			for (int c = candidates - 1; c > 0; c--) // shuffle
+			{
+				int other = random.nextInt(c + 1);
+				int id = orders[b][c];
+				orders[b][c] = orders[b][other];
+				orders[b][other] = id;
+			}
+		}
+		return orders;
+	}
+
+	/**
+	 * Picks a position in the order that hasn't been picked yet, by weight. Picks
+	 * that land on a taken position are tried again a few times, then the first
+	 * free position after it is used.
+	 */
+	private int pick(SplittableRandom random, boolean[] picked)
+	{
+		double total = cumulativeWeights[candidates - 1];
+		int position = 0;
+		for (int attempt = 0; attempt < 8; attempt++)
+		{
+			position = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * total);
+			if (position < 0)
+				position = -position - 1;
+			position = Math.min(position, candidates - 1);
+			if (!picked[position])
+				return position;
+		}
+		while (picked[position])
+			position = (position + 1) % candidates;
+		return position;
+	}
+}
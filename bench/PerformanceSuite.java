@@ -0,0 +1,233 @@
+package beta;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * The PerformanceSuite counts a few big generated elections from start to end,
+ * the way VoteMain does (read the csv file, count, write the report), and
+ * compares how fast and how much memory each took with a stored baseline.
+ *
+ * For each election the best of RUNS runs is kept: the most ballots counted per
+ * second, and the lowest peak heap of each stage (reading the csv file, and
+ * counting and writing the report). The peak of a stage is the sum of the peak
+ * use of every heap memory pool, with the peaks reset after a garbage
+ * collection just before the stage, so it includes garbage made during the
+ * stage and not collected yet. If any of these is worse than the baseline by
+ * more than its tolerance, the suite says so and exits with status 1. For
+ * where the time and allocation go inside a count, see CountBenchmark.
+ *
+ * Run it with "gradle performanceSuite" (see build.gradle), which always uses
+ * the same heap size and garbage collector, since the peaks depend on them.
+ * The baseline, BASELINE, is kept in the project. It depends on the machine it
+ * was recorded on, so record it again (with "gradle performanceSuite -Drecord",
+ * or -Drecord when running this class) on a new reference machine or after a
+ * change that is meant to change the numbers. Without -Drecord a missing
+ * baseline is an error. The elections are generated into the temp folder the
+ * first time and reused after that.
+ *
+ * @author CRLS Computer Science Club
+ *
+ */
+public class PerformanceSuite
+{
+	final static String BASELINE = "bench/baseline.properties";
+	final static int RUNS = 3;
+	final static double THROUGHPUT_TOLERANCE = 0.20; // may be up to 20% slower
+	final static double HEAP_TOLERANCE = 0.25; // may use up to 25% more heap at its peak
+
+	private static MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+	/**
+	 * One election to count
+	 */
+	static class Workload
+	{
+		final String name;
+		final ElectionGenerator.Distribution distribution;
+		final int ballots;
+		final int candidates;
+		final int maxDepth;
+		final int seats;
+		double ballotsPerSecond;
+		double ingestPeakMB;
+		double countPeakMB;
+
+		Workload(String name, ElectionGenerator.Distribution distribution, int ballots, int candidates, int maxDepth,
+				int seats)
+		{
+			this.name = name;
+			this.distribution = distribution;
+			this.ballots = ballots;
+			this.candidates = candidates;
+			this.maxDepth = maxDepth;
+			this.seats = seats;
+		}
+
+		String filename()
+		{
+			return new File(System.getProperty("java.io.tmpdir"), "perf-" + name + ".csv").getPath();
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean record = System.getProperty("record") != null;
+		ArrayList<Workload> workloads = new ArrayList<Workload>();
+		workloads.add(new Workload("uniform-100k-20", ElectionGenerator.Distribution.UNIFORM, 100000, 20, 20, 3));
+		workloads.add(new Workload("zipf-250k-60", ElectionGenerator.Distribution.ZIPF, 250000, 60, 10, 5));
+		workloads.add(new Workload("blocs-1m-200", ElectionGenerator.Distribution.BLOCS, 1000000, 200, 10, 9));
+
+		Properties baseline = new Properties();
+		if (!record && !new File(BASELINE).isFile())
+		{
+			System.out.println("There is no baseline at " + BASELINE + "; run with -Drecord to record one");
+			System.exit(1);
+		}
+		if (!record)
+		{
+			InputStream in = new FileInputStream(BASELINE);
+			baseline.load(in);
+			in.close();
+		}
+
+		System.out.println(String.format("%-18s %12s %12s %10s %10s %10s %10s", "Election", "ballots/s", "baseline",
+				"read MB", "baseline", "count MB", "baseline"));
+		int regressions = 0;
+		for (Workload workload : workloads)
+		{
+			generate(workload);
+			for (int run = 0; run < RUNS; run++)
+				measure(workload);
+			if (record)
+			{
+				baseline.setProperty(workload.name + ".ballotsPerSecond", String.format("%.0f", workload.ballotsPerSecond));
+				baseline.setProperty(workload.name + ".ingestPeakMB", String.format("%.1f", workload.ingestPeakMB));
+				baseline.setProperty(workload.name + ".countPeakMB", String.format("%.1f", workload.countPeakMB));
+				System.out.println(String.format("%-18s %12.0f %12s %10.1f %10s %10.1f %10s", workload.name,
+						workload.ballotsPerSecond, "", workload.ingestPeakMB, "", workload.countPeakMB, ""));
+				continue;
+			}
+			double baseThroughput = getBaseline(baseline, workload.name + ".ballotsPerSecond");
+			double baseIngest = getBaseline(baseline, workload.name + ".ingestPeakMB");
+			double baseCount = getBaseline(baseline, workload.name + ".countPeakMB");
+			String problems = "";
+			if (workload.ballotsPerSecond < baseThroughput * (1 - THROUGHPUT_TOLERANCE))
+				problems += "  SLOWER";
+			if (workload.ingestPeakMB > baseIngest * (1 + HEAP_TOLERANCE)
+					|| workload.countPeakMB > baseCount * (1 + HEAP_TOLERANCE))
+				problems += "  MORE MEMORY";
+			if (!problems.isEmpty())
+				regressions++;
+			System.out.println(String.format("%-18s %12.0f %12.0f %10.1f %10.1f %10.1f %10.1f%s", workload.name,
+					workload.ballotsPerSecond, baseThroughput, workload.ingestPeakMB, baseIngest,
+					workload.countPeakMB, baseCount, problems));
+		}
+
+		if (record)
+		{
+			OutputStream out = new FileOutputStream(BASELINE);
+			baseline.store(out, "PerformanceSuite baseline, recorded with " + System.getProperty("java.version")
+					+ " on " + Runtime.getRuntime().availableProcessors() + " processors");
+			out.close();
+			System.out.println("Baseline written to " + BASELINE);
+		}
+		else if (regressions > 0)
+		{
+			System.out.println(regressions + " of " + workloads.size() + " elections got worse than the baseline");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return  a number from the baseline, ending the run if it isn't there
+	 */
+	private static double getBaseline(Properties baseline, String key)
+	{
+		String value = baseline.getProperty(key);
+		if (value == null)
+		{
+			System.out.println(BASELINE + " has no " + key + "; run with -Drecord to record it again");
+			System.exit(1);
+		}
+		return Double.parseDouble(value);
+	}
+
+	private static void generate(Workload workload) throws IOException
+	{
+		if (new File(workload.filename()).isFile())
+			return;
+		ElectionGenerator generator = new ElectionGenerator(workload.candidates, 1);
+		generator.setDistribution(workload.distribution);
+		generator.setDepth(1, workload.maxDepth);
+		generator.write(workload.filename(), workload.ballots);
+	}
+
+	/**
+	 * Counts the election once, keeping the result if it is the best so far
+	 */
+	private static void measure(Workload workload)
+	{
+		startStage();
+		long start = System.nanoTime();
+		ParallelFormReader reader = new ParallelFormReader(workload.filename());
+		ArrayList<Ballot> groups = reader.readBallotGroups();
+		BallotStore ballots = new BallotList(reader.getDictionary(), groups);
+		long ingestNanos = System.nanoTime() - start;
+		double ingestPeakMB = peakMB();
+
+		startStage();
+		start = System.nanoTime();
+		Tabulator tallier = new Tabulator(ballots, workload.seats, Tabulator.TransferMode.WHOLE_BALLOTS, 1);
+		tallier.tabulate();
+		File report = new File(System.getProperty("java.io.tmpdir"), "perf-" + workload.name + " report.txt");
+		tallier.writeReport(report.getPath(), new TextReportRenderer());
+		long countNanos = System.nanoTime() - start;
+		double countPeakMB = peakMB();
+		report.delete();
+		if (tallier.numberOfWinners() == 0)
+			System.out.println(workload.name + " elected nobody");
+
+		double ballotsPerSecond = workload.ballots / ((ingestNanos + countNanos) / 1e9);
+		workload.ballotsPerSecond = Math.max(workload.ballotsPerSecond, ballotsPerSecond);
+		workload.ingestPeakMB = (workload.ingestPeakMB == 0) ? ingestPeakMB : Math.min(workload.ingestPeakMB, ingestPeakMB);
+		workload.countPeakMB = (workload.countPeakMB == 0) ? countPeakMB : Math.min(workload.countPeakMB, countPeakMB);
+	}
+
+	/**
+	 * Collects the garbage and resets the peak use of every heap pool
+	 */
+	private static void startStage()
+	{
+		memory.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+		}
+	}
+
+	/**
+	 * @return  the sum of the peak use of every heap pool since startStage, in MB
+	 */
+	private static double peakMB()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		}
+		return peak / (1024.0 * 1024.0);
+	}
+}